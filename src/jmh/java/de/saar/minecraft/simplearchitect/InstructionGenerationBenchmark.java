@@ -0,0 +1,87 @@
+package de.saar.minecraft.simplearchitect;
+
+import de.saar.coli.minecraft.MinecraftRealizer;
+import de.saar.coli.minecraft.relationextractor.IntroductionMessage;
+import de.saar.coli.minecraft.relationextractor.MinecraftObject;
+import de.saar.coli.minecraft.relationextractor.Relation.Orientation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import umd.cs.shop.costs.CostFunction;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long it takes to generate one instruction.
+ *
+ * <p>The setup replays the plan of the scenario at the instruction level (like
+ * {@link SimpleArchitect#generateSeedInstructionTrees(MinecraftRealizer, PlanCreator)} does) and stores
+ * world, target and "it" for every instruction.  Each benchmark invocation then generates the tree and the
+ * sentence for the next instruction of the plan, cycling through all four orientations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class InstructionGenerationBenchmark {
+    private record Step(Set<MinecraftObject> world, MinecraftObject target, Set<MinecraftObject> it) {}
+
+    @Param({"house", "bridge"})
+    public String scenario;
+
+    @Param({"BLOCK", "MEDIUM", "HIGHLEVEL"})
+    public String instructionLevel;
+
+    private MinecraftRealizer realizer;
+    private final List<Step> steps = new ArrayList<>();
+    private final Orientation[] orientations = Orientation.values();
+    private int next = 0;
+
+    @Setup
+    public void setup() {
+        realizer = MinecraftRealizer.createRealizer();
+        var planCreator = PlanCache.get(scenario, CostFunction.InstructionLevel.valueOf(instructionLevel));
+        var world = planCreator.getInitialWorld();
+        Set<MinecraftObject> it = new HashSet<>();
+        for (var mco : planCreator.getPlan()) {
+            if (mco instanceof IntroductionMessage im) {
+                if (!im.starting) {
+                    world.add(im.object);
+                    it.add(im.object);
+                }
+                continue;
+            }
+            steps.add(new Step(new HashSet<>(world), mco, new HashSet<>(it)));
+            world.add(mco);
+            world.addAll(mco.getBlocks());
+            it.clear();
+            it.add(mco);
+        }
+    }
+
+    @Benchmark
+    public String instruction() {
+        var step = steps.get(next % steps.size());
+        var orientation = orientations[(next / steps.size()) % orientations.length];
+        next++;
+        var tree = realizer.generateReferringExpressionTree(step.world(), step.target(), step.it(), orientation);
+        if (tree == null) {
+            return null;
+        }
+        return realizer.treeToReferringExpression(tree);
+    }
+}
@@ -0,0 +1,115 @@
+package de.saar.minecraft.simplearchitect;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import umd.cs.shop.JSJshop;
+import umd.cs.shop.JSState;
+import umd.cs.shop.costs.CostFunction;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the stages of creating a plan at the start of a game separately:
+ * loading the resources, running JSHOP on the world ({@code transformWorldForArchitect}),
+ * converting the JSHOP state into the world ({@code transformState}) and parsing the plan
+ * ({@code transformPlan}), as well as creating a {@link PlanCreator} and a {@link PlanCreatorFromFile}
+ * as a whole (without {@link PlanCache}).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PlanCreationBenchmark {
+    @Param({"house", "bridge"})
+    public String scenario;
+
+    @Param({"BLOCK", "MEDIUM", "HIGHLEVEL"})
+    public String instructionLevel;
+
+    private CostFunction.InstructionLevel level;
+    private PlanCreator planCreator;
+    private String problem;
+    private String planString;
+    private JSState state;
+    private Path planFile;
+
+    @Setup
+    public void setup() throws IOException {
+        level = CostFunction.InstructionLevel.valueOf(instructionLevel);
+        planCreator = PlanCache.get(scenario, level);
+        problem = PlanCreator.getResourceAsString("/de/saar/minecraft/domains/" + scenario + ".init").strip();
+        planString = PlanCreator.getResourceAsString(planResource());
+        var planner = new JSJshop();
+        planner.transformWorldForArchitect(
+                PlanCreator.getResourceStream("/de/saar/minecraft/worlds/" + scenario + ".csv"),
+                problem,
+                PlanCreator.getResourceStream("/de/saar/minecraft/domains/" + scenario + ".lisp"));
+        state = planner.prob.state();
+        planFile = Files.createTempFile(scenario + "-" + instructionLevel, ".plan");
+        Files.writeString(planFile, planString);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(planFile);
+    }
+
+    private String planResource() {
+        return "/de/saar/minecraft/domains/" + scenario + "-" + level.name().toLowerCase() + ".plan";
+    }
+
+    @Benchmark
+    public List<String> loadResources() {
+        return List.of(
+                PlanCreator.getResourceAsString("/de/saar/minecraft/worlds/" + scenario + ".csv"),
+                PlanCreator.getResourceAsString("/de/saar/minecraft/domains/" + scenario + ".lisp"),
+                PlanCreator.getResourceAsString("/de/saar/minecraft/domains/" + scenario + ".init"),
+                PlanCreator.getResourceAsString(planResource()));
+    }
+
+    @Benchmark
+    public JSState transformWorldForArchitect() {
+        var planner = new JSJshop();
+        planner.transformWorldForArchitect(
+                PlanCreator.getResourceStream("/de/saar/minecraft/worlds/" + scenario + ".csv"),
+                problem,
+                PlanCreator.getResourceStream("/de/saar/minecraft/domains/" + scenario + ".lisp"));
+        return planner.prob.state();
+    }
+
+    @Benchmark
+    public Object transformState() {
+        return planCreator.transformState(state);
+    }
+
+    @Benchmark
+    public Object transformPlan() {
+        return planCreator.transformPlan(planString);
+    }
+
+    @Benchmark
+    public PlanCreator planCreator() {
+        return new PlanCreator(scenario, level);
+    }
+
+    @Benchmark
+    public PlanCreator planCreatorFromFile() {
+        return new PlanCreatorFromFile(scenario, planFile.toString());
+    }
+}
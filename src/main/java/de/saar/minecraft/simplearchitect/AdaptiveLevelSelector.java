@@ -0,0 +1,65 @@
+package de.saar.minecraft.simplearchitect;
+
+import de.saar.minecraft.analysis.WeightEstimator;
+import org.tinylog.Logger;
+import umd.cs.shop.costs.CostFunction;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+/**
+ * Selects the instruction level with the lowest predicted cost for the "adaptive" instruction level.
+ *
+ * <p>Computing the costs realizes the plans of all instruction levels, which takes seconds.  The selection
+ * is therefore started in the background as soon as the weights of a game are known (i.e. when the architect
+ * is created, long before the scenario is selected) and cached by scenario and weights, so that games with
+ * the same weights share it.
+ */
+public class AdaptiveLevelSelector {
+    private record Key(String scenario, String weightsFingerprint) {}
+
+    private static final int CAPACITY = 100;
+
+    private static final Map<Key, CompletableFuture<CostFunction.InstructionLevel>> cache =
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, CompletableFuture<CostFunction.InstructionLevel>> eldest) {
+                    return size() > CAPACITY;
+                }
+            };
+
+    private AdaptiveLevelSelector() {}
+
+    /**
+     * Returns the (possibly still running) selection of the instruction level for {@code scenario}
+     * under {@code weights} (null for the default weights), see {@link PlanCostEvaluator#getOptimalPlan}.
+     */
+    public static Future<CostFunction.InstructionLevel> select(String scenario, WeightEstimator.WeightResult weights) {
+        var key = new Key(scenario, PlanCostEvaluator.weightsFingerprint(weights));
+        synchronized (cache) {
+            var cached = cache.get(key);
+            if (cached != null && !cached.isCompletedExceptionally()) {
+                return cached;
+            }
+            var result = CompletableFuture.supplyAsync(() -> {
+                var level = CostFunction.InstructionLevel.valueOf(
+                        PlanCostEvaluator.getOptimalPlan(scenario, weights).getInstructionLevel());
+                Logger.info("adaptive instruction level for {}: {}", scenario, level);
+                return level;
+            }, ArchitectExecutors.background());
+            cache.put(key, result);
+            return result;
+        }
+    }
+
+    /**
+     * Removes all cached selections.
+     */
+    public static void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+}
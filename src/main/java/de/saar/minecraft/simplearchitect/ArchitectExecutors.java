@@ -0,0 +1,169 @@
+package de.saar.minecraft.simplearchitect;
+
+import org.tinylog.Logger;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Thread pools shared by all architects of this process, so that the number of threads
+ * does not grow with the number of games.
+ *
+ * <p>If {@link #setUseVirtualThreads(boolean)} is enabled and the Java runtime supports virtual threads
+ * (Java 21 and later), the pools run their tasks on virtual threads.  The build targets Java 17,
+ * so virtual threads are only accessed through reflection.
+ */
+public class ArchitectExecutors {
+    private static boolean useVirtualThreads = false;
+    private static ExecutorService background;
+    private static ScheduledExecutorService scheduler;
+    private static ExecutorService eventLogWriter;
+
+    private ArchitectExecutors() {}
+
+    /**
+     * Selects whether the pools use virtual threads.  This has to be called before any of the pools is used.
+     */
+    public static synchronized void setUseVirtualThreads(boolean use) {
+        if (background != null || scheduler != null || eventLogWriter != null) {
+            throw new IllegalStateException("executors are already in use");
+        }
+        if (use && !virtualThreadsSupported()) {
+            Logger.warn("virtual threads are not supported by Java {}, using platform threads", Runtime.version());
+            use = false;
+        }
+        useVirtualThreads = use;
+    }
+
+    public static synchronized boolean getUseVirtualThreads() {
+        return useVirtualThreads;
+    }
+
+    /**
+     * Returns the pool for computations that should not run on the thread handling
+     * the messages of a game, e.g. precomputing instructions.
+     */
+    public static synchronized ExecutorService background() {
+        if (background == null) {
+            if (useVirtualThreads) {
+                // virtual threads run on a carrier pool with one thread per core anyway.
+                background = newThreadPerTaskExecutor(virtualThreads("architect-background"));
+            } else {
+                background = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                        daemonThreads("architect-background"));
+            }
+        }
+        return background;
+    }
+
+    /**
+     * Returns the pool for short tasks that need to run at a certain time, e.g. sending a message
+     * after a pause.  Do not run long computations on it.
+     */
+    public static synchronized ScheduledExecutorService scheduler() {
+        if (scheduler == null) {
+            scheduler = Executors.newScheduledThreadPool(2, useVirtualThreads
+                    ? virtualThreads("architect-scheduler")
+                    : daemonThreads("architect-scheduler"));
+        }
+        return scheduler;
+    }
+
+    /**
+     * Returns the thread that writes the background event logs of all games, see {@link GameEventLog}.
+     * It is separate from {@link #background()}, so that a handler waiting for a full event log
+     * never waits for a task that itself waits for the architect.
+     */
+    public static synchronized ExecutorService eventLogWriter() {
+        if (eventLogWriter == null) {
+            eventLogWriter = Executors.newSingleThreadExecutor(useVirtualThreads
+                    ? virtualThreads("architect-event-log")
+                    : daemonThreads("architect-event-log"));
+        }
+        return eventLogWriter;
+    }
+
+    /**
+     * Like {@link CompletableFuture#supplyAsync(Supplier, java.util.concurrent.Executor)}, but cancelling the
+     * result also cancels the task: it does not run if it has not started yet, and its thread is interrupted
+     * otherwise.
+     */
+    public static <T> CompletableFuture<T> supplyCancellable(Supplier<T> supplier, ExecutorService executor) {
+        var result = new CompletableFuture<T>();
+        var task = executor.submit(() -> {
+            try {
+                result.complete(supplier.get());
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        result.whenComplete((value, e) -> {
+            if (result.isCancelled()) {
+                task.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Returns whether this Java runtime supports virtual threads.  Java 19 and 20 have them as a preview
+     * feature, which fails at runtime without {@code --enable-preview}, so we require Java 21 and also
+     * try to create a virtual thread.
+     */
+    public static boolean virtualThreadsSupported() {
+        if (Runtime.version().feature() < 21) {
+            return false;
+        }
+        try {
+            virtualThreads("architect-probe").newThread(() -> {});
+            return true;
+        } catch (UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns a factory for virtual threads named {@code name}-1, {@code name}-2, ...
+     * Only call this if {@link #virtualThreadsSupported()}.
+     */
+    public static ThreadFactory virtualThreads(String name) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name + "-", 1L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("virtual threads are not supported", e);
+        }
+    }
+
+    /**
+     * Returns an executor that starts a new thread from {@code factory} for every task.
+     */
+    public static ExecutorService newThreadPerTaskExecutor(ThreadFactory factory) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, factory);
+        } catch (ReflectiveOperationException e) {
+            // Java < 21: a cached pool also starts a thread per task if no idle thread is available.
+            return Executors.newCachedThreadPool(factory);
+        }
+    }
+
+    /**
+     * Returns a factory for daemon platform threads named {@code name}-1, {@code name}-2, ...
+     */
+    public static ThreadFactory daemonThreads(String name) {
+        AtomicInteger counter = new AtomicInteger(0);
+        return (r) -> {
+            var thread = new Thread(r, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
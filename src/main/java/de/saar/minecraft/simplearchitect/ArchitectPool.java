@@ -0,0 +1,179 @@
+package de.saar.minecraft.simplearchitect;
+
+import org.tinylog.Logger;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Keeps architects ready for new games, so that a game does not have to wait for the realizer
+ * and the weights to be created.  Use {@code pool::take} as the {@code ArchitectFactory}.
+ *
+ * <p>The pool is refilled in the background after every {@link #take()}.  Its size adapts to the
+ * arrival rate of games: it holds as many architects as games are expected to arrive while one architect
+ * is constructed (plus one), but at least {@code minSize} and at most {@code maxSize}.  Both the time
+ * between games and the construction time are exponentially weighted moving averages.
+ *
+ * <p>Every architect is tagged with the version of the weights when its construction started
+ * (e.g. {@link WeightSnapshotService#getVersion()}); {@link #take()} discards architects whose weights
+ * have been refitted since, so a game never starts with weights older than the latest fit.
+ */
+public class ArchitectPool {
+    /** weight of the latest observation in the moving averages */
+    private static final double ALPHA = 0.2;
+
+    private final Supplier<SimpleArchitect> factory;
+    private final LongSupplier weightsVersion;
+    private final int minSize;
+    private final int maxSize;
+    private final ConcurrentLinkedQueue<Entry> ready = new ConcurrentLinkedQueue<>();
+    /** number of architects that are constructed in the background right now */
+    private final AtomicInteger pending = new AtomicInteger(0);
+    /** architects are constructed one after another, not on the shared pools as it can block for seconds */
+    private final ExecutorService executor =
+            Executors.newSingleThreadExecutor(ArchitectExecutors.daemonThreads("architect-pool"));
+
+    private long lastArrival = 0;
+    private double meanArrivalInterval = Double.POSITIVE_INFINITY;
+    private double meanConstructionTime = 0;
+    private volatile int targetSize;
+    private final AtomicInteger numDiscarded = new AtomicInteger(0);
+
+    /** a ready architect and the version of the weights when it was constructed */
+    private record Entry(SimpleArchitect architect, long weightsVersion) {}
+
+    /**
+     * Creates a pool for architects whose weights never change after they are constructed.
+     */
+    public ArchitectPool(Supplier<SimpleArchitect> factory, int minSize, int maxSize) {
+        this(factory, () -> 0, minSize, maxSize);
+    }
+
+    /**
+     * Creates a pool for architects that take their weights from a source with versions,
+     * e.g. {@code weightService::getVersion}.
+     */
+    public ArchitectPool(Supplier<SimpleArchitect> factory, LongSupplier weightsVersion, int minSize, int maxSize) {
+        if (minSize < 0 || maxSize < minSize) {
+            throw new IllegalArgumentException("invalid pool size: " + minSize + " to " + maxSize);
+        }
+        this.factory = factory;
+        this.weightsVersion = weightsVersion;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.targetSize = minSize;
+    }
+
+    /**
+     * Starts filling the pool in the background.
+     */
+    public void start() {
+        refill();
+    }
+
+    /**
+     * Returns a ready architect with the latest weights, or constructs one right away if there is none.
+     * Ready architects with older weights are discarded.
+     */
+    public SimpleArchitect take() {
+        recordArrival();
+        long latest = weightsVersion.getAsLong();
+        SimpleArchitect architect = null;
+        for (var entry = ready.poll(); entry != null; entry = ready.poll()) {
+            if (entry.weightsVersion() >= latest) {
+                architect = entry.architect();
+                break;
+            }
+            numDiscarded.incrementAndGet();
+        }
+        if (architect == null) {
+            Logger.info("architect pool has no architect with the latest weights, creating one for this game now");
+            architect = construct().architect();
+        }
+        refill();
+        return architect;
+    }
+
+    private synchronized void recordArrival() {
+        long now = System.nanoTime();
+        if (lastArrival != 0) {
+            double interval = (now - lastArrival) / 1e9;
+            meanArrivalInterval = Double.isInfinite(meanArrivalInterval)
+                    ? interval : ALPHA * interval + (1 - ALPHA) * meanArrivalInterval;
+        }
+        lastArrival = now;
+        targetSize = targetSize(meanArrivalInterval, meanConstructionTime, minSize, maxSize);
+    }
+
+    /**
+     * The number of architects needed to serve the games arriving (every {@code meanArrivalInterval}
+     * seconds) while one architect is constructed (in {@code meanConstructionTime} seconds), plus one.
+     */
+    static int targetSize(double meanArrivalInterval, double meanConstructionTime, int minSize, int maxSize) {
+        double expected = meanArrivalInterval > 0 ? meanConstructionTime / meanArrivalInterval : maxSize;
+        long size = (long) Math.ceil(expected) + 1;
+        return (int) Math.max(minSize, Math.min(maxSize, size));
+    }
+
+    private Entry construct() {
+        long start = System.nanoTime();
+        // read the version first: if the weights are refitted during construction, the architect is stale
+        long version = weightsVersion.getAsLong();
+        var architect = factory.get();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        synchronized (this) {
+            meanConstructionTime = meanConstructionTime == 0
+                    ? seconds : ALPHA * seconds + (1 - ALPHA) * meanConstructionTime;
+        }
+        return new Entry(architect, version);
+    }
+
+    private void refill() {
+        while (ready.size() + pending.get() < targetSize) {
+            pending.incrementAndGet();
+            executor.execute(() -> {
+                try {
+                    ready.add(construct());
+                } catch (RuntimeException e) {
+                    // take() creates architects itself if the pool stays empty
+                    Logger.error("could not create architect for the pool");
+                    Logger.error(e);
+                } finally {
+                    pending.decrementAndGet();
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns the number of architects that are ready right now.
+     */
+    public int getNumReady() {
+        return ready.size();
+    }
+
+    /**
+     * Returns the number of ready architects that were discarded because their weights were stale.
+     */
+    public int getNumDiscarded() {
+        return numDiscarded.get();
+    }
+
+    /**
+     * Returns the number of architects the pool currently tries to keep ready.
+     */
+    public int getTargetSize() {
+        return targetSize;
+    }
+
+    /**
+     * Stops refilling the pool.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,319 @@
+package de.saar.minecraft.simplearchitect;
+
+import de.saar.coli.minecraft.relationextractor.Block;
+import de.saar.coli.minecraft.relationextractor.MinecraftObject;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A set of block positions that does not allocate objects for its entries.
+ *
+ * <p>Each position is packed into a single {@code long} (26 bits for x and z, 12 bits for y, like Minecraft does)
+ * and stored in an open-addressing hash table with linear probing.  Adding, removing and looking up
+ * positions by their coordinates therefore does not create {@link Block} objects.
+ * Positions can also be queried by bounding box.
+ *
+ * <p>This class is not thread-safe.
+ */
+public class BlockIndex {
+    /**
+     * Callback for iterating over the positions in an index.
+     */
+    @FunctionalInterface
+    public interface PositionConsumer {
+        void accept(int x, int y, int z);
+    }
+
+    /** marks free slots; the position packed to this value is tracked by {@link #containsEmptyKey}. */
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] table;
+    private int size = 0;
+    private boolean containsEmptyKey = false;
+
+    public BlockIndex() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Creates an index that can hold {@code expectedSize} positions without growing.
+     */
+    public BlockIndex(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * 3 / 4 < expectedSize) {
+            capacity *= 2;
+        }
+        table = newTable(capacity);
+    }
+
+    /**
+     * Creates a copy of {@code other}.
+     */
+    public BlockIndex(BlockIndex other) {
+        this.table = other.table.clone();
+        this.size = other.size;
+        this.containsEmptyKey = other.containsEmptyKey;
+    }
+
+    /**
+     * Returns an index of all blocks of all {@code objects}.
+     */
+    public static BlockIndex of(Collection<? extends MinecraftObject> objects) {
+        var result = new BlockIndex(objects.size());
+        for (var object : objects) {
+            if (object instanceof Block block) {
+                result.add(block);
+            } else {
+                object.getBlocks().forEach(result::add);
+            }
+        }
+        return result;
+    }
+
+    public static long pack(int x, int y, int z) {
+        return ((long) (x & 0x3FFFFFF) << 38) | ((long) (z & 0x3FFFFFF) << 12) | (y & 0xFFF);
+    }
+
+    public static int unpackX(long packed) {
+        return (int) (packed >> 38);
+    }
+
+    public static int unpackY(long packed) {
+        return (int) (packed << 52 >> 52);
+    }
+
+    public static int unpackZ(long packed) {
+        return (int) (packed << 26 >> 38);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(table, EMPTY);
+        size = 0;
+        containsEmptyKey = false;
+    }
+
+    public boolean contains(int x, int y, int z) {
+        return containsPacked(pack(x, y, z));
+    }
+
+    public boolean contains(Block block) {
+        return contains(block.xpos, block.ypos, block.zpos);
+    }
+
+    /**
+     * Adds the position and returns whether it was not contained before.
+     */
+    public boolean add(int x, int y, int z) {
+        return addPacked(pack(x, y, z));
+    }
+
+    public boolean add(Block block) {
+        return add(block.xpos, block.ypos, block.zpos);
+    }
+
+    /**
+     * Removes the position and returns whether it was contained before.
+     */
+    public boolean remove(int x, int y, int z) {
+        return removePacked(pack(x, y, z));
+    }
+
+    public boolean remove(Block block) {
+        return remove(block.xpos, block.ypos, block.zpos);
+    }
+
+    public void addAll(BlockIndex other) {
+        other.forEachPacked(this::addPacked);
+    }
+
+    public void removeAll(BlockIndex other) {
+        if (other.size() < size) {
+            other.forEachPacked(this::removePacked);
+        } else {
+            // removing while iterating over our own table would move entries around
+            var toRemove = new BlockIndex(size);
+            forEachPacked((packed) -> {
+                if (other.containsPacked(packed)) {
+                    toRemove.addPacked(packed);
+                }
+            });
+            toRemove.forEachPacked(this::removePacked);
+        }
+    }
+
+    public void forEach(PositionConsumer consumer) {
+        forEachPacked((packed) -> consumer.accept(unpackX(packed), unpackY(packed), unpackZ(packed)));
+    }
+
+    /**
+     * Calls {@code consumer} for all positions within the bounding box (all bounds inclusive).
+     */
+    public void forEachInBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, PositionConsumer consumer) {
+        long volume = (long) (maxX - minX + 1) * (maxY - minY + 1) * (maxZ - minZ + 1);
+        if (volume <= 0) {
+            return;
+        }
+        if (volume < size) {
+            // cheaper to look up every position of the box
+            for (int x = minX; x <= maxX; x++) {
+                for (int y = minY; y <= maxY; y++) {
+                    for (int z = minZ; z <= maxZ; z++) {
+                        if (contains(x, y, z)) {
+                            consumer.accept(x, y, z);
+                        }
+                    }
+                }
+            }
+        } else {
+            forEach((x, y, z) -> {
+                if (x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ) {
+                    consumer.accept(x, y, z);
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns the number of positions within the bounding box (all bounds inclusive).
+     */
+    public int countInBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        int[] count = {0};
+        forEachInBox(minX, minY, minZ, maxX, maxY, maxZ, (x, y, z) -> count[0]++);
+        return count[0];
+    }
+
+    /**
+     * Returns the positions as newly created blocks, e.g. for logging.
+     */
+    public Set<Block> toBlocks() {
+        var result = new HashSet<Block>();
+        forEach((x, y, z) -> result.add(new Block(x, y, z)));
+        return result;
+    }
+
+    private interface PackedConsumer {
+        void accept(long packed);
+    }
+
+    private void forEachPacked(PackedConsumer consumer) {
+        if (containsEmptyKey) {
+            consumer.accept(EMPTY);
+        }
+        for (long entry : table) {
+            if (entry != EMPTY) {
+                consumer.accept(entry);
+            }
+        }
+    }
+
+    private boolean containsPacked(long packed) {
+        if (packed == EMPTY) {
+            return containsEmptyKey;
+        }
+        int mask = table.length - 1;
+        for (int i = slot(packed, mask); ; i = (i + 1) & mask) {
+            long entry = table[i];
+            if (entry == EMPTY) {
+                return false;
+            }
+            if (entry == packed) {
+                return true;
+            }
+        }
+    }
+
+    private boolean addPacked(long packed) {
+        if (packed == EMPTY) {
+            if (containsEmptyKey) {
+                return false;
+            }
+            containsEmptyKey = true;
+            size++;
+            return true;
+        }
+        int mask = table.length - 1;
+        int i = slot(packed, mask);
+        while (table[i] != EMPTY) {
+            if (table[i] == packed) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        table[i] = packed;
+        size++;
+        if (size > table.length * 3 / 4) {
+            resize(table.length * 2);
+        }
+        return true;
+    }
+
+    private boolean removePacked(long packed) {
+        if (packed == EMPTY) {
+            if (!containsEmptyKey) {
+                return false;
+            }
+            containsEmptyKey = false;
+            size--;
+            return true;
+        }
+        int mask = table.length - 1;
+        int i = slot(packed, mask);
+        while (table[i] != packed) {
+            if (table[i] == EMPTY) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        // shift following entries back so that lookups do not stop at the hole
+        int hole = i;
+        for (int j = (hole + 1) & mask; table[j] != EMPTY; j = (j + 1) & mask) {
+            int home = slot(table[j], mask);
+            // move the entry if its home slot is not between the hole and its current slot (cyclically)
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                table[hole] = table[j];
+                hole = j;
+            }
+        }
+        table[hole] = EMPTY;
+        size--;
+        return true;
+    }
+
+    private void resize(int capacity) {
+        long[] old = table;
+        table = newTable(capacity);
+        int mask = capacity - 1;
+        for (long entry : old) {
+            if (entry != EMPTY) {
+                int i = slot(entry, mask);
+                while (table[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                table[i] = entry;
+            }
+        }
+    }
+
+    private static long[] newTable(int capacity) {
+        long[] result = new long[capacity];
+        Arrays.fill(result, EMPTY);
+        return result;
+    }
+
+    private static int slot(long packed, int mask) {
+        long h = packed * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
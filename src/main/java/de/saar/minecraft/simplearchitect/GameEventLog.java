@@ -0,0 +1,169 @@
+package de.saar.minecraft.simplearchitect;
+
+import org.tinylog.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Writes the game events of one game (e.g. "CurrentObject" or "RealizerTiming") in the background,
+ * so that slow log storage does not delay the instructions.
+ *
+ * <p>Events are queued with a supplier for their message, which is only called by the writer;
+ * the supplier must therefore not depend on state that changes afterwards.  The writer runs on
+ * {@code executor}, takes the queued events in batches and passes each batch to the sink in one call.
+ * If the queue is full, the {@link OverflowPolicy} decides what happens.  Events whose type is
+ * in {@code keptTypes} (e.g. the world deltas, which are useless once one of them is missing) are
+ * never dropped: they wait for space in the queue, and DROP_OLDEST only drops other events.
+ *
+ * <p>Use an executor on which nothing else waits for the architect (e.g.
+ * {@link ArchitectExecutors#eventLogWriter()}): with {@link OverflowPolicy#BLOCK}, a handler holding
+ * the architect's lock waits for the writer.
+ */
+public class GameEventLog {
+    public enum OverflowPolicy {
+        /** wait until there is space in the queue. */
+        BLOCK,
+        /** drop the event that is being logged. */
+        DROP_NEWEST,
+        /** drop the oldest queued event that may be dropped to make space. */
+        DROP_OLDEST
+    }
+
+    /** an event as passed to the sink. */
+    public record Event(String message, String type) {}
+
+    private record QueuedEvent(Supplier<String> message, String type) {}
+
+    private static final int BATCH_SIZE = 64;
+
+    private final Consumer<List<Event>> sink;
+    private final Executor executor;
+    private final BlockingQueue<QueuedEvent> queue;
+    private final OverflowPolicy overflowPolicy;
+    private final Set<String> keptTypes;
+    private final AtomicLong numDropped = new AtomicLong(0);
+    private final AtomicBoolean writing = new AtomicBoolean(false);
+
+    /**
+     * @param sink receives the events in batches, in the order in which they were logged
+     */
+    public GameEventLog(Consumer<List<Event>> sink, Executor executor, int capacity,
+                        OverflowPolicy overflowPolicy) {
+        this(sink, executor, capacity, overflowPolicy, Set.of());
+    }
+
+    /**
+     * @param sink receives the events in batches, in the order in which they were logged
+     * @param keptTypes the types of the events that are never dropped
+     */
+    public GameEventLog(Consumer<List<Event>> sink, Executor executor, int capacity,
+                        OverflowPolicy overflowPolicy, Set<String> keptTypes) {
+        this.sink = sink;
+        this.executor = executor;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.overflowPolicy = overflowPolicy;
+        this.keptTypes = keptTypes;
+    }
+
+    public void log(Supplier<String> message, String type) {
+        var event = new QueuedEvent(message, type);
+        boolean kept = keptTypes.contains(type);
+        if (overflowPolicy == OverflowPolicy.DROP_OLDEST) {
+            while (!queue.offer(event)) {
+                if (!dropOldest()) {
+                    // only kept events are queued, so wait for the writer.
+                    put(event);
+                    break;
+                }
+            }
+        } else if (overflowPolicy == OverflowPolicy.BLOCK || kept) {
+            put(event);
+        } else if (!queue.offer(event)) {
+            numDropped.incrementAndGet();
+        }
+        startWriter();
+    }
+
+    private void put(QueuedEvent event) {
+        startWriter();
+        try {
+            queue.put(event);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            numDropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Removes the oldest queued event that is not kept and returns false if there is none.
+     */
+    private boolean dropOldest() {
+        var it = queue.iterator();
+        while (it.hasNext()) {
+            if (!keptTypes.contains(it.next().type())) {
+                it.remove();
+                numDropped.incrementAndGet();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of events waiting to be written.
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Returns the number of events dropped because the queue was full.
+     */
+    public long getNumDropped() {
+        return numDropped.get();
+    }
+
+    private void startWriter() {
+        if (writing.compareAndSet(false, true)) {
+            executor.execute(this::write);
+        }
+    }
+
+    private void write() {
+        List<QueuedEvent> batch = new ArrayList<>(BATCH_SIZE);
+        while (true) {
+            queue.drainTo(batch, BATCH_SIZE);
+            if (batch.isEmpty()) {
+                writing.set(false);
+                // an event might have been queued after draining but before we stopped writing.
+                if (queue.isEmpty() || !writing.compareAndSet(false, true)) {
+                    return;
+                }
+                continue;
+            }
+            List<Event> events = new ArrayList<>(batch.size());
+            for (var event : batch) {
+                try {
+                    events.add(new Event(event.message().get(), event.type()));
+                } catch (RuntimeException e) {
+                    Logger.warn("could not log {}: {}", event.type(), e);
+                }
+            }
+            try {
+                sink.accept(events);
+            } catch (RuntimeException e) {
+                Logger.warn("could not log {} events: {}", events.size(), e);
+            }
+            batch.clear();
+        }
+    }
+}
@@ -37,7 +37,34 @@ public class Main {
 		Logger.info("Using config: {}", config.toString());
 		// make compiler happy because config is not considered final
 		SimpleArchitectConfiguration myconfig = config;
-        ArchitectFactory factory = () -> new SimpleArchitect(myconfig);
+		ArchitectExecutors.setUseVirtualThreads(config.getUseVirtualThreads());
+		PlanCache.setArtifactDirectory(config.getPlanArtifactDirectory());
+		SeedGameCache.setCacheDirectory(config.getSeedGameCacheDirectory());
+		PlanCostCache.setFile(config.getPlanCostCacheFile());
+		if (config.getMaxRealizersPerPool() > 0) {
+			RealizerPool.setMaxRealizers(config.getMaxRealizersPerPool());
+		}
+		if (config.getAddSeedGames()) {
+			// generate the seed games while the server starts instead of in the first game
+			ArchitectExecutors.background().submit(SeedGameCache::get);
+		}
+		WeightSnapshotService weightService = null;
+		if (config.getWeightRefreshMinutes() > 0 && WeightSnapshotService.supports(config.getWeightSource())) {
+			weightService = new WeightSnapshotService(config);
+			weightService.start();
+		}
+		WeightSnapshotService myWeightService = weightService;
+        ArchitectFactory factory;
+        if (config.getArchitectPoolSize() > 0) {
+            var pool = new ArchitectPool(() -> new SimpleArchitect(myconfig, myWeightService),
+                    myWeightService != null ? myWeightService::getVersion : () -> 0,
+                    config.getArchitectPoolSize(),
+                    Math.max(config.getArchitectPoolSize(), config.getArchitectPoolMaxSize()));
+            pool.start();
+            factory = pool::take;
+        } else {
+            factory = () -> new SimpleArchitect(myconfig, myWeightService);
+        }
         int port = config.getPort();
 		if (args.length >= 2) {
 			port = Integer.parseInt(args[1]);
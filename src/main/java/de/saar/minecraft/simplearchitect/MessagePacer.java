@@ -0,0 +1,99 @@
+package de.saar.minecraft.simplearchitect;
+
+import org.tinylog.Logger;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends the outgoing messages of one game in order, with a pause between some of them,
+ * without blocking the caller.
+ *
+ * <p>All messages are sent from the scheduler, one at a time, and never while holding a lock
+ * of this class.  A message is sent after all previously queued messages and at least
+ * {@code pauseMillis} after the previous one.
+ */
+public class MessagePacer {
+    private record Delivery(long dueNanos, Runnable send) {}
+
+    private final ScheduledExecutorService scheduler;
+    private final Queue<Delivery> queue = new ArrayDeque<>();
+    /** time at which the last queued message is due. */
+    private long lastDueNanos = Long.MIN_VALUE;
+    /** true while a task on the scheduler is responsible for sending the queued messages. */
+    private boolean draining = false;
+    private ScheduledFuture<?> pending;
+    private boolean closed = false;
+
+    public MessagePacer(ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Queues {@code send} to be run after all previously queued messages
+     * and at least {@code pauseMillis} after the previous one.
+     */
+    public synchronized void send(Runnable send, long pauseMillis) {
+        if (closed) {
+            return;
+        }
+        long now = System.nanoTime();
+        long due = now;
+        if (lastDueNanos != Long.MIN_VALUE) {
+            due = Math.max(now, lastDueNanos + TimeUnit.MILLISECONDS.toNanos(pauseMillis));
+        }
+        lastDueNanos = due;
+        queue.add(new Delivery(due, send));
+        if (!draining) {
+            draining = true;
+            scheduler.execute(this::drain);
+        }
+    }
+
+    /**
+     * Drops all messages that have not been sent yet; nothing will be sent afterwards.
+     */
+    public synchronized void close() {
+        closed = true;
+        queue.clear();
+        if (pending != null) {
+            pending.cancel(false);
+        }
+    }
+
+    /**
+     * Returns the number of messages waiting to be sent.
+     */
+    public synchronized int getQueueSize() {
+        return queue.size();
+    }
+
+    private void drain() {
+        while (true) {
+            Delivery next;
+            synchronized (this) {
+                pending = null;
+                next = queue.peek();
+                if (next == null || closed) {
+                    draining = false;
+                    return;
+                }
+                long wait = next.dueNanos() - System.nanoTime();
+                if (wait > 0) {
+                    // we are still responsible, continue when the next message is due.
+                    pending = scheduler.schedule(this::drain, wait, TimeUnit.NANOSECONDS);
+                    return;
+                }
+                queue.poll();
+            }
+            try {
+                next.send().run();
+            } catch (RuntimeException e) {
+                Logger.warn("could not send message: {}", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package de.saar.minecraft.simplearchitect;
+
+import org.tinylog.Logger;
+import umd.cs.shop.JSJshop;
+import umd.cs.shop.costs.CostFunction;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles the initial world and the plan of a scenario at an instruction level into a binary file
+ * that {@link PlanCreatorFromArtifact} loads without running JSHOP.
+ * Run it with {@code java -cp ... de.saar.minecraft.simplearchitect.PlanArtifact <output-directory> [scenario...]}
+ * (default scenarios: house and bridge) and set {@code planArtifactDirectory} in the configuration.
+ *
+ * <p>Format (big endian):
+ * <pre>
+ * int magic, int version, 32 bytes SHA-256 of the source resources ({@link #sourceChecksum})
+ * string scenario, string instruction level
+ * int #block types, string type ...
+ * int #world blocks, (short type, int x, int y, int z) ...
+ * int #plan tasks, (byte operator, byte phase, int arg ...) ...
+ * </pre>
+ * where strings are an unsigned short length followed by UTF-8 bytes and a task has
+ * {@link PlanCreator.PlanOperator#numArgs} arguments.
+ */
+public class PlanArtifact {
+    static final int MAGIC = 0x5341504c; // "SAPL"
+    static final int VERSION = 1;
+    static final int CHECKSUM_LENGTH = 32;
+    private static final List<String> DEFAULT_SCENARIOS = List.of("house", "bridge");
+
+    private PlanArtifact() {}
+
+    /**
+     * The file of the artifact for {@code scenario} at {@code instructionLevel} in {@code directory}.
+     */
+    public static Path getPath(Path directory, String scenario, CostFunction.InstructionLevel instructionLevel) {
+        return directory.resolve(scenario + "-" + instructionLevel.name().toLowerCase() + ".planbin");
+    }
+
+    /**
+     * SHA-256 over the world, domain, problem and precomputed plan the artifact was compiled from.
+     * An artifact with a different checksum is stale.
+     */
+    static byte[] sourceChecksum(String scenario, CostFunction.InstructionLevel instructionLevel) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        for (String resource : List.of(
+                "/de/saar/minecraft/worlds/" + scenario + ".csv",
+                "/de/saar/minecraft/domains/" + scenario + ".lisp",
+                "/de/saar/minecraft/domains/" + scenario + ".init",
+                "/de/saar/minecraft/domains/" + scenario + "-" + instructionLevel.name().toLowerCase() + ".plan")) {
+            try (InputStream in = PlanCreator.getResourceStream(resource)) {
+                if (in == null) {
+                    throw new RuntimeException("resource not found: " + resource);
+                }
+                digest.update(in.readAllBytes());
+            } catch (IOException e) {
+                throw new RuntimeException("could not read " + resource, e);
+            }
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Runs JSHOP on the scenario and writes the resulting world and plan to {@code file}.
+     */
+    public static void compile(String scenario, CostFunction.InstructionLevel instructionLevel, Path file)
+            throws IOException {
+        var planCreator = new PlanCreator();
+        planCreator.instructionLevel = instructionLevel;
+        JSJshop planner = new JSJshop();
+        String jshopPlan = planCreator.computeJShopPlan(planner, scenario, instructionLevel);
+
+        List<String> types = new ArrayList<>();
+        Map<String, Integer> typeIndices = new HashMap<>();
+        List<int[]> world = new ArrayList<>();
+        PlanCreator.readState(planner.prob.state(), (type, x, y, z) -> {
+            int index = typeIndices.computeIfAbsent(type, (t) -> {
+                types.add(t);
+                return types.size() - 1;
+            });
+            world.add(new int[] {index, x, y, z});
+        });
+        List<int[]> tasks = new ArrayList<>();
+        planCreator.readPlan(jshopPlan, (operator, phase, args) -> {
+            int[] task = new int[2 + operator.numArgs];
+            task[0] = operator.ordinal();
+            task[1] = phase.ordinal();
+            System.arraycopy(args, 0, task, 2, operator.numArgs);
+            tasks.add(task);
+        });
+
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        // write to a temporary file first so games never see a partially written artifact
+        Path tmp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.write(sourceChecksum(scenario, instructionLevel));
+            writeString(out, scenario);
+            writeString(out, instructionLevel.name());
+            out.writeInt(types.size());
+            for (String type : types) {
+                writeString(out, type);
+            }
+            out.writeInt(world.size());
+            for (int[] block : world) {
+                out.writeShort(block[0]);
+                out.writeInt(block[1]);
+                out.writeInt(block[2]);
+                out.writeInt(block[3]);
+            }
+            out.writeInt(tasks.size());
+            for (int[] task : tasks) {
+                out.writeByte(task[0]);
+                out.writeByte(task[1]);
+                for (int i = 2; i < task.length; i++) {
+                    out.writeInt(task[i]);
+                }
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Logger.info("compiled {} at level {}: {} blocks, {} tasks", scenario, instructionLevel,
+                world.size(), tasks.size());
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: PlanArtifact <output-directory> [scenario...]");
+            System.exit(1);
+        }
+        Path directory = Paths.get(args[0]);
+        List<String> scenarios = args.length > 1 ? List.of(args).subList(1, args.length) : DEFAULT_SCENARIOS;
+        for (String scenario : scenarios) {
+            for (var instructionLevel : CostFunction.InstructionLevel.values()) {
+                compile(scenario, instructionLevel, getPath(directory, scenario, instructionLevel));
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package de.saar.minecraft.simplearchitect;
+
+import umd.cs.shop.costs.CostFunction;
+import org.tinylog.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide cache of {@link PlanCreator}s.
+ * Creating a plan creator reads the world, domain and plan resources and runs them through JSHOP,
+ * which yields the same result for every game with the same scenario and instruction level.
+ * The cached plan creators are never modified; every consumer gets its own copy of the plan and the world
+ * through {@link PlanCreator#getPlan()}, {@link PlanCreator#getInitialWorld()} and
+ * {@link PlanCreator#getBlocksCurrentWorld()}.
+ * If an artifact directory is set (see {@link PlanArtifact}), precomputed plans are loaded from
+ * the artifacts there instead, falling back to JSHOP for missing or stale artifacts.
+ */
+public class PlanCache {
+    private record Key(String scenario, CostFunction.InstructionLevel instructionLevel, String planFile) {}
+
+    private static final Map<Key, PlanCreator> cache = new ConcurrentHashMap<>();
+
+    private static volatile Path artifactDirectory = null;
+
+    private PlanCache() {}
+
+    /**
+     * Sets the directory containing the artifacts compiled by {@link PlanArtifact}; null or an empty
+     * string disables loading artifacts.
+     */
+    public static void setArtifactDirectory(String directory) {
+        artifactDirectory = directory == null || directory.isEmpty() ? null : Path.of(directory);
+    }
+
+    /**
+     * Returns the (shared) plan creator for the precomputed plan of {@code scenario} at {@code instructionLevel}.
+     */
+    public static PlanCreator get(String scenario, CostFunction.InstructionLevel instructionLevel) {
+        return cache.computeIfAbsent(new Key(scenario, instructionLevel, ""), (key) -> {
+            Path directory = artifactDirectory;
+            if (directory != null) {
+                Path file = PlanArtifact.getPath(directory, scenario, instructionLevel);
+                if (Files.exists(file)) {
+                    try {
+                        Logger.info("loading plan for {} at level {} from {}", scenario, instructionLevel, file);
+                        return new PlanCreatorFromArtifact(scenario, instructionLevel, file);
+                    } catch (IOException e) {
+                        Logger.warn("could not load plan artifact, falling back to JSHOP: {}", e.getMessage());
+                    }
+                } else {
+                    Logger.warn("no plan artifact {}, falling back to JSHOP", file);
+                }
+            }
+            Logger.info("creating plan for {} at level {}", scenario, instructionLevel);
+            return new PlanCreator(scenario, instructionLevel);
+        });
+    }
+
+    /**
+     * Returns the (shared) plan creator for {@code scenario} using the plan stored in {@code planFile}.
+     */
+    public static PlanCreator getFromFile(String scenario, String planFile) {
+        return cache.computeIfAbsent(new Key(scenario, CostFunction.InstructionLevel.HIGHLEVEL, planFile), (key) -> {
+            Logger.info("creating plan for {} from {}", scenario, planFile);
+            return new PlanCreatorFromFile(scenario, planFile);
+        });
+    }
+
+    /**
+     * Removes all cached plans, e.g. after a plan file was changed on disk.
+     */
+    public static void clear() {
+        cache.clear();
+    }
+}
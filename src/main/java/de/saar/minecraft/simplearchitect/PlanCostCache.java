@@ -0,0 +1,184 @@
+package de.saar.minecraft.simplearchitect;
+
+import de.saar.coli.minecraft.relationextractor.MinecraftObject;
+import de.saar.minecraft.analysis.WeightEstimator;
+import org.tinylog.Logger;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Process-wide cache of plan costs (see {@link PlanCostEvaluator#getCost}), keyed by a fingerprint of the plan
+ * and of the weights, so that the same plan is never costed twice under the same weights.
+ *
+ * <p>If a file is set with {@link #setFile(String)}, the cache is read from it and every newly computed cost
+ * is appended to it (one {@code plan-fingerprint weights-fingerprint cost} per line), so that later runs
+ * do not need to compute the costs again.  The first line of the file holds the {@link RealizerChecksum};
+ * a file written with another realizer or grammar is discarded.
+ * Only use it for weights that are fully described by a {@link WeightEstimator.WeightResult} (or the default
+ * weights), not for randomized realizers.
+ */
+public class PlanCostCache {
+    private static final Map<String, Double> costs = new ConcurrentHashMap<>();
+    /** fingerprints of the plan creators, computed once per plan creator */
+    private static final Map<PlanCreator, String> planFingerprints = Collections.synchronizedMap(new WeakHashMap<>());
+    private static Path file = null;
+    private static BufferedWriter writer = null;
+
+    private static final String HEADER_PREFIX = "#realizer ";
+
+    private PlanCostCache() {}
+
+    /**
+     * Reads the costs stored in {@code fileName} and appends all costs computed from now on to it.
+     * null or an empty string only caches in memory.
+     */
+    public static synchronized void setFile(String fileName) {
+        closeWriter();
+        file = fileName == null || fileName.isEmpty() ? null : Path.of(fileName);
+        if (file == null || !Files.exists(file)) {
+            return;
+        }
+        try {
+            var lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            if (lines.isEmpty() || !lines.get(0).equals(header())) {
+                Logger.info("discarding the plan costs in {}, they were computed with another realizer", file);
+                Files.delete(file);
+                return;
+            }
+            int numRead = 0;
+            for (String line : lines.subList(1, lines.size())) {
+                String[] parts = line.split(" ");
+                if (parts.length != 3) {
+                    continue;
+                }
+                try {
+                    costs.put(key(parts[0], parts[1]), Double.parseDouble(parts[2]));
+                    numRead++;
+                } catch (NumberFormatException e) {
+                    Logger.warn("ignoring malformed line in {}: {}", file, line);
+                }
+            }
+            Logger.info("read {} plan costs from {}", numRead, file);
+        } catch (IOException e) {
+            Logger.warn("could not read plan costs from {}, only caching in memory: {}", file, e);
+            file = null;
+        }
+    }
+
+    /**
+     * Returns the cost of the plan of {@code planCreator} under {@code weights} (null for the default weights),
+     * running {@code computeCost} only if it is not cached yet.
+     */
+    public static double getCost(PlanCreator planCreator, WeightEstimator.WeightResult weights,
+                                 DoubleSupplier computeCost) {
+        String planFingerprint = planFingerprint(planCreator);
+        String weightsFingerprint = PlanCostEvaluator.weightsFingerprint(weights);
+        String key = key(planFingerprint, weightsFingerprint);
+        Double cached = costs.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        double cost = computeCost.getAsDouble();
+        if (costs.putIfAbsent(key, cost) == null) {
+            store(planFingerprint, weightsFingerprint, cost);
+        }
+        return cost;
+    }
+
+    /**
+     * Returns a fingerprint (SHA-256, hex) of the plan and the initial world of {@code planCreator}.
+     */
+    public static String planFingerprint(PlanCreator planCreator) {
+        return planFingerprints.computeIfAbsent(planCreator, (pc) -> {
+            MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
+            for (var object : pc.getPlan()) {
+                digest.update(object.asJson().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) '\n');
+            }
+            digest.update((byte) '|');
+            // the world is a set, so sort it to be independent of the iteration order
+            pc.getInitialWorld().stream()
+                    .map(MinecraftObject::asJson)
+                    .sorted()
+                    .forEach((json) -> {
+                        digest.update(json.getBytes(StandardCharsets.UTF_8));
+                        digest.update((byte) '\n');
+                    });
+            return HexFormat.of().formatHex(digest.digest());
+        });
+    }
+
+    private static String key(String planFingerprint, String weightsFingerprint) {
+        return planFingerprint + " " + weightsFingerprint;
+    }
+
+    private static String header() {
+        return HEADER_PREFIX + RealizerChecksum.get();
+    }
+
+    private static synchronized void store(String planFingerprint, String weightsFingerprint, double cost) {
+        if (file == null) {
+            return;
+        }
+        try {
+            if (writer == null) {
+                boolean isNew = !Files.exists(file);
+                writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                if (isNew) {
+                    writer.write(header());
+                    writer.newLine();
+                }
+            }
+            writer.write(planFingerprint + " " + weightsFingerprint + " " + cost);
+            writer.newLine();
+            writer.flush();
+        } catch (IOException e) {
+            Logger.warn("could not store plan cost in {}: {}", file, e);
+        }
+    }
+
+    private static void closeWriter() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                Logger.warn("could not close {}: {}", file, e);
+            }
+            writer = null;
+        }
+    }
+
+    /**
+     * Removes all costs from memory (but not from the file).
+     */
+    public static void clear() {
+        costs.clear();
+        planFingerprints.clear();
+    }
+
+    /**
+     * Returns the number of cached costs.
+     */
+    public static int size() {
+        return costs.size();
+    }
+}
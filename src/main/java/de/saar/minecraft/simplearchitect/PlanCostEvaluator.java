@@ -0,0 +1,263 @@
+package de.saar.minecraft.simplearchitect;
+
+import de.saar.coli.minecraft.MinecraftRealizer;
+import de.saar.coli.minecraft.relationextractor.IntroductionMessage;
+import de.saar.coli.minecraft.relationextractor.MinecraftObject;
+import de.saar.coli.minecraft.relationextractor.Relation;
+import de.saar.minecraft.analysis.WeightEstimator;
+import de.up.ling.tree.Tree;
+import org.tinylog.Logger;
+import umd.cs.shop.costs.CostFunction;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Predicts the cost (in seconds) of the plans for a scenario under given grammar weights
+ * and selects the cheapest instruction level.
+ */
+public class PlanCostEvaluator {
+    private PlanCostEvaluator() {}
+
+    /**
+     * Creates a new realizer with {@code weights}, or the default weights if {@code weights} is null.
+     */
+    public static MinecraftRealizer createRealizer(WeightEstimator.WeightResult weights) {
+        var realizer = MinecraftRealizer.createRealizer();
+        if (weights != null) {
+            realizer.setExpectedDurations(weights.weights, false);
+        }
+        return realizer;
+    }
+
+    /**
+     * Returns a fingerprint (SHA-256, hex) of {@code weights} that does not depend on the order of the
+     * entries; weights with the same fingerprint yield the same plan costs.  "default" for null.
+     */
+    public static String weightsFingerprint(WeightEstimator.WeightResult weights) {
+        if (weights == null) {
+            return "default";
+        }
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        for (var map : List.of(weights.weights, weights.firstOccurenceWeights)) {
+            for (var entry : new TreeMap<>(map).entrySet()) {
+                digest.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) '=');
+                digest.update(Double.toString(entry.getValue()).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) ';');
+            }
+            digest.update((byte) '|');
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Returns the plan creator with the lowest cost for {@code scenario} among all instruction levels.
+     * The levels are evaluated concurrently on the common fork-join pool, each with a realizer borrowed
+     * from the shared {@link RealizerPool} for {@code weights}.  Ties are broken as in a sequential
+     * search, i.e. the first level in the order of {@link CostFunction.InstructionLevel} wins.
+     * Costs are cached in the {@link PlanCostCache}.
+     */
+    public static PlanCreator getOptimalPlan(String scenario, WeightEstimator.WeightResult weights) {
+        var levels = CostFunction.InstructionLevel.values();
+        List<Future<Double>> costs = new ArrayList<>();
+        for (var il : levels) {
+            costs.add(ForkJoinPool.commonPool().submit(() -> {
+                var planCreator = PlanCache.get(scenario, il);
+                return PlanCostCache.getCost(planCreator, weights,
+                        () -> getCost(RealizerPool.shared(weights), planCreator, false));
+            }));
+        }
+        PlanCreator argmin = null;
+        double min = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < levels.length; i++) {
+            double cost;
+            try {
+                cost = costs.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("interrupted while computing the plan costs", e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("could not compute the cost for level " + levels[i], e.getCause());
+            }
+            Logger.debug("cost for instruction level {}: {}", levels[i], cost);
+            if (cost < min) {
+                argmin = PlanCache.get(scenario, levels[i]);
+                min = cost;
+            }
+        }
+        return argmin;
+    }
+
+    /**
+     * Same as {@link #getOptimalPlan(String, WeightEstimator.WeightResult)}, but evaluates the levels
+     * one after another on the calling thread using the realizers and weights of {@code realizers}.
+     * Meant for callers that already run many evaluations in parallel.
+     */
+    public static PlanCreator getOptimalPlan(String scenario, RealizerPool realizers) {
+        PlanCreator argmin = null;
+        double min = Double.POSITIVE_INFINITY;
+        for (var il : CostFunction.InstructionLevel.values()) {
+            var planCreator = PlanCache.get(scenario, il);
+            double cost = getCost(realizers, planCreator, false);
+            Logger.debug("cost for instruction level {}: {}", il, cost);
+            if (cost < min) {
+                argmin = planCreator;
+                min = cost;
+            }
+        }
+        return argmin;
+    }
+
+    /**
+     * Same as {@link #getOptimalPlan(String, RealizerPool)}, but costs
+     * the plans with the {@link PlanFeatureModel}s in {@code models} instead of realizing them.
+     * A model is (re)built with {@code realizers} if there is none for a level yet or if the weights
+     * differ by more than {@code tolerance} from the ones it was built with,
+     * see {@link PlanFeatureModel#isValidFor}.
+     *
+     * @param models the models of the caller by instruction level, updated by this method.
+     */
+    public static PlanCreator getOptimalPlan(String scenario, RealizerPool realizers,
+                                             Map<CostFunction.InstructionLevel, PlanFeatureModel> models,
+                                             double tolerance) {
+        var weights = realizers.getWeights();
+        PlanCreator argmin = null;
+        double min = Double.POSITIVE_INFINITY;
+        for (var il : CostFunction.InstructionLevel.values()) {
+            var planCreator = PlanCache.get(scenario, il);
+            var model = models.get(il);
+            if (model == null || !model.isValidFor(weights, tolerance)) {
+                var newModel = PlanFeatureModel.create(planCreator, realizers);
+                if (model != null) {
+                    Logger.debug("re-realized plan for level {}: {} trees changed",
+                            il, model.countChangedTrees(newModel));
+                }
+                model = newModel;
+                models.put(il, model);
+            }
+            double cost = model.isAdditive() ? model.getCost(weights) : model.rescore(realizers);
+            Logger.debug("cost for instruction level {}: {}", il, cost);
+            if (cost < min) {
+                argmin = planCreator;
+                min = cost;
+            }
+        }
+        return argmin;
+    }
+
+    /** Receives the derivation trees of a plan, see {@link #realizePlan}. */
+    interface TreeHandler {
+        /**
+         * @param realizer the realizer that generated {@code tree}, to compute its weight.
+         * @param firstOccurrenceRule the rule with the first occurrence weight in {@code realizer}, null if none.
+         */
+        void tree(MinecraftObject target, Tree<String> tree, MinecraftRealizer realizer, String firstOccurrenceRule);
+    }
+
+    /**
+     * Generates the derivation trees for all objects of the plan created by {@code planCreator}, as they would
+     * be instructed in a game; introduction messages are skipped.
+     * The first occurrence of an object type is realized with the first occurrence weight of its rule,
+     * which is set on the borrowed realizer only for that object, see {@link RealizerPool#withFirstOccurrence}.
+     */
+    static void realizePlan(RealizerPool realizers, PlanCreator planCreator, TreeHandler handler) {
+        realizers.withRealizer((realizer) -> {
+            realizePlan(realizer, realizers, planCreator, handler);
+            return null;
+        });
+    }
+
+    private static void realizePlan(MinecraftRealizer realizer, RealizerPool realizers,
+                                    PlanCreator planCreator, TreeHandler handler) {
+        Logger.debug("computing cost for {}", planCreator.getInstructionLevel());
+        var weights = realizers.getWeights();
+        var tmpplan = planCreator.getPlan();
+        var tmpworld = planCreator.getInitialWorld();
+        HashSet<MinecraftObject> it = new HashSet<>();
+        Set<String> knownOjbectTypes = new HashSet<>();
+        for (var mco : tmpplan) {
+            if (mco instanceof IntroductionMessage im) {
+                if (!im.starting) {
+                    tmpworld.add(im.object);
+                    it.add(im.object);
+                    knownOjbectTypes.add(im.object.getClass().getSimpleName().toLowerCase());
+                }
+                continue;
+            }
+            String currentObjectType = mco.getClass().getSimpleName().toLowerCase();
+            Logger.debug("current object {}", currentObjectType);
+            boolean objectFirstOccurence = !knownOjbectTypes.contains(currentObjectType);
+            // use the first occurence weight ... if we have an estimate for the first occurence
+            if (objectFirstOccurence && weights != null
+                    && weights.firstOccurenceWeights.containsKey("i" + currentObjectType)) {
+                String firstOccurrenceRule = "i" + currentObjectType;
+                // on the realizer we already have, another one from the same pool might never become free
+                RealizerPool.withFirstOccurrence(realizer, weights, firstOccurrenceRule, (firstOccurrenceRealizer) -> {
+                    realizeObject(firstOccurrenceRealizer, tmpworld, mco, it, firstOccurrenceRule, handler);
+                    return null;
+                });
+            } else {
+                realizeObject(realizer, tmpworld, mco, it, null, handler);
+            }
+            tmpworld.add(mco);
+            tmpworld.addAll(mco.getBlocks());
+            it.clear();
+            it.add(mco);
+            if (objectFirstOccurence) {
+                knownOjbectTypes.add(currentObjectType);
+            }
+
+            /* TODO: In a real world we would also have the last block as "it", but we don't know which it is.
+               Add a random block from getBlocks?
+             */
+        }
+    }
+
+    private static void realizeObject(MinecraftRealizer realizer, Set<MinecraftObject> world, MinecraftObject mco,
+                                      Set<MinecraftObject> it, String firstOccurrenceRule, TreeHandler handler) {
+        var tree = realizer.generateReferringExpressionTree(world, mco, it, Relation.Orientation.XMINUS);
+        if (tree == null) {
+            Logger.warn("tree is null in the following context: ");
+            Logger.warn("current target: {}", mco);
+            Logger.warn("current world: {}", SimpleArchitect.toJson(world));
+            Logger.warn("it: {}", SimpleArchitect.toJson(it));
+        }
+        handler.tree(mco, tree, realizer, firstOccurrenceRule);
+    }
+
+    /**
+     * Returns the predicted cost (in seconds) to fulfill the plan created by {@code planCreator}.
+     * The cost is the negative weight of all derivation trees for the plans (see {@link #realizePlan});
+     * introduction messages are ignored.
+     * Realizing a plan does not change any weights, so costs can be computed concurrently with the same
+     * {@code realizers} and do not depend on the order of the computations.
+     */
+    public static double getCost(RealizerPool realizers, PlanCreator planCreator, boolean printInstructions) {
+        double[] totalCost = {0};
+        realizePlan(realizers, planCreator, (mco, tree, realizer, firstOccurrenceRule) -> {
+            if (printInstructions) {
+                System.out.println(tree);
+                System.out.println(realizer.treeToReferringExpression(tree) + " (" + -realizer.getWeightForTree(tree) + ")");
+            }
+            totalCost[0] -= realizer.getWeightForTree(tree);
+        });
+        return totalCost[0];
+    }
+}
@@ -11,6 +11,7 @@ import java.io.BufferedReader;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -29,6 +30,8 @@ public class PlanCreator {
 
     protected Set<MinecraftObject> world;
     protected List<MinecraftObject> plan;
+    /** all blocks of {@link #world}, see {@link #getBlocksCurrentWorld()}. Never modified after creation. */
+    protected BlockIndex blocksCurrentWorld;
     protected CostFunction.InstructionLevel instructionLevel;
     
     protected PlanCreator(){}
@@ -61,13 +64,14 @@ public class PlanCreator {
      * @return a set of all blocks currently in the world.
      */
     public Set<Block> getBlocksCurrentWorld() {
-        HashSet<Block> alreadyPlacedBlocks = new HashSet<>();
-        world.forEach((x) ->
-                x.getBlocks().forEach((block) ->
-                        alreadyPlacedBlocks.add(new Block(block.xpos, block.ypos, block.zpos))
-                )
-        );
-        return alreadyPlacedBlocks;
+        return blocksCurrentWorld.toBlocks();
+    }
+
+    /**
+     * Same as {@link #getBlocksCurrentWorld()}, but as a (copied) {@link BlockIndex}.
+     */
+    public BlockIndex getBlockIndexCurrentWorld() {
+        return new BlockIndex(blocksCurrentWorld);
     }
 
     /**
@@ -89,24 +93,33 @@ public class PlanCreator {
         return getResourceAsString("/de/saar/minecraft/domains/" + precomputedFileName);
     }
 
+    /**
+     * Computes the plan and sets {@link #world}.  The world and the returned plan
+     * are unmodifiable because plan creators are shared between games, see {@link PlanCache}.
+     */
     protected List<MinecraftObject> computePlan(String scenario) {
         Logger.debug("computing plan");
         JSJshop planner = new JSJshop();
         var jshopPlan = computeJShopPlan(planner, scenario, this.instructionLevel);
 
-        world = transformState(planner.prob.state());
+        world = Collections.unmodifiableSet(transformState(planner.prob.state()));
         // note which blocks already exist in the world.
+        blocksCurrentWorld = BlockIndex.of(world);
         Logger.debug("plan computed");
-        return transformPlan(jshopPlan);
+        return Collections.unmodifiableList(transformPlan(jshopPlan));
+    }
+
+    private static int parseInt(String s) {
+        return (int) Double.parseDouble(s);
     }
 
     public MinecraftObject createRailing(String[] taskArray) {
-        int x1, x2, y1, z1, z2, length, dir;
-        x1 = (int) Double.parseDouble(taskArray[1]);
-        y1 = (int) Double.parseDouble(taskArray[2]);
-        z1 = (int) Double.parseDouble(taskArray[3]);
-        length = (int) Double.parseDouble(taskArray[4]);
-        dir = (int) Double.parseDouble(taskArray[5]);
+        return createRailing(parseInt(taskArray[1]), parseInt(taskArray[2]), parseInt(taskArray[3]),
+                parseInt(taskArray[4]), parseInt(taskArray[5]));
+    }
+
+    public MinecraftObject createRailing(int x1, int y1, int z1, int length, int dir) {
+        int x2, z2;
         //east=1=>x+, west=2=>x-, north=3=>z-, south=4=>z+
         if (dir == 1) {
             x2 = x1 + length - 1;
@@ -127,13 +140,12 @@ public class PlanCreator {
     }
 
     public MinecraftObject createWall(String[] taskArray) {
-        int x1, x2, y1, y2, z1, z2, length, height, dir;
-        x1 = (int) Double.parseDouble(taskArray[1]);
-        y1 = (int) Double.parseDouble(taskArray[2]);
-        z1 = (int) Double.parseDouble(taskArray[3]);
-        length = (int) Double.parseDouble(taskArray[4]);
-        height = (int) Double.parseDouble(taskArray[5]);
-        dir = (int) Double.parseDouble(taskArray[6]);
+        return createWall(parseInt(taskArray[1]), parseInt(taskArray[2]), parseInt(taskArray[3]),
+                parseInt(taskArray[4]), parseInt(taskArray[5]), parseInt(taskArray[6]));
+    }
+
+    public MinecraftObject createWall(int x1, int y1, int z1, int length, int height, int dir) {
+        int x2, y2, z2;
         //east=1=>x+, west=2=>x-, north=3=>z-, south=4=>z+
 
         if (dir == 1) {
@@ -156,13 +168,12 @@ public class PlanCreator {
     }
 
     public MinecraftObject createFloor(String[] taskArray) {
-        int x1, x2, y1, z1, z2, length, width, dir;
-        x1 = (int) Double.parseDouble(taskArray[1]);
-        y1 = (int) Double.parseDouble(taskArray[2]);
-        z1 = (int) Double.parseDouble(taskArray[3]);
-        length = (int) Double.parseDouble(taskArray[4]);
-        width = (int) Double.parseDouble(taskArray[5]);
-        dir = (int) Double.parseDouble(taskArray[6]);
+        return createFloor(parseInt(taskArray[1]), parseInt(taskArray[2]), parseInt(taskArray[3]),
+                parseInt(taskArray[4]), parseInt(taskArray[5]), parseInt(taskArray[6]));
+    }
+
+    public MinecraftObject createFloor(int x1, int y1, int z1, int length, int width, int dir) {
+        int x2, z2;
         //east=1=>x+, west=2=>x-, north=3=>z-, south=4=>z+
         if (dir == 1) {
             x2 = x1 + width - 1;
@@ -184,12 +195,12 @@ public class PlanCreator {
     }
 
     public MinecraftObject createRow(String[] taskArray){
-        int x1, y1, z1, x2, z2, length, dir;
-        x1 = (int) Double.parseDouble(taskArray[1]);
-        y1 = (int) Double.parseDouble(taskArray[2]);
-        z1 = (int) Double.parseDouble(taskArray[3]);
-        length = (int) Double.parseDouble(taskArray[4]);
-        dir = (int) Double.parseDouble(taskArray[5]);
+        return createRow(parseInt(taskArray[1]), parseInt(taskArray[2]), parseInt(taskArray[3]),
+                parseInt(taskArray[4]), parseInt(taskArray[5]));
+    }
+
+    public MinecraftObject createRow(int x1, int y1, int z1, int length, int dir) {
+        int x2, z2;
         //east=1=>x+, west=2=>x-, north=3=>z-, south=4=>z+
         if (dir == 1) {
             x2 = x1 + length - 1;
@@ -210,14 +221,12 @@ public class PlanCreator {
     }
 
     public MinecraftObject createStairs(String[] taskArray) {
-        int x1, x2, x3, y1, y3, z1, z2, z3, length, width, height, dir;
-        x1 = (int) Double.parseDouble(taskArray[1]);
-        y1 = (int) Double.parseDouble(taskArray[2]);
-        z1 = (int) Double.parseDouble(taskArray[3]);
-        width = (int) Double.parseDouble(taskArray[4]);
-        length =  (int) Double.parseDouble(taskArray[5]);
-        height =  (int) Double.parseDouble(taskArray[6]);
-        dir =  (int) Double.parseDouble(taskArray[7]);
+        return createStairs(parseInt(taskArray[1]), parseInt(taskArray[2]), parseInt(taskArray[3]),
+                parseInt(taskArray[4]), parseInt(taskArray[5]), parseInt(taskArray[6]), parseInt(taskArray[7]));
+    }
+
+    public MinecraftObject createStairs(int x1, int y1, int z1, int width, int length, int height, int dir) {
+        int x2, x3, y3, z2, z3;
         //east=1=>x+, west=2=>x-, north=3=>z-, south=4=>z+
         if (dir == 1) {
             x2 = x1 + width - 1;
@@ -246,95 +255,164 @@ public class PlanCreator {
         return new Stairs( "staircase", x1, y1, z1, x2, z2, x3, y3, z3);
     }
 
-    public List<MinecraftObject> transformPlan(String jshopPlan) {
-        var result = new ArrayList<MinecraftObject>();
-        String[] tasks = jshopPlan.split("\n");
-        for (String task : tasks) {
-            //t = (JSTaskAtom) jshopPlan.elementAt(i);
-            //String task = tasks[i];
-            //log(task, "Plan");
-            String[] taskArray = task.split(" ");
-            int x1, y1, z1; // , x2, y2, z2, length, width, height, dir;
-            // boolean inst = false;
-            switch (taskArray[0]) {
-                case "(!place-block":
-                    x1 = (int) Double.parseDouble(taskArray[2]);
-                    y1 = (int) Double.parseDouble(taskArray[3]);
-                    z1 = (int) Double.parseDouble(taskArray[4]);
-                    result.add(new Block(x1, y1, z1));
-                    break;
-                case "(!build-row":
-                    result.add(createRow(taskArray));
-                    break;
-                case "(!build-row-starting":
-                    if (instructionLevel != CostFunction.InstructionLevel.BLOCK)
-                        result.add(new IntroductionMessage(createRow(taskArray), true, "row"));
-                    break;
-                case "(!build-row-finished":
-                    if (instructionLevel != CostFunction.InstructionLevel.BLOCK)
-                        result.add(new IntroductionMessage(createRow(taskArray), false, "row"));
-                    break;
-                case "(!build-wall-starting":
-                    if (instructionLevel != CostFunction.InstructionLevel.BLOCK)
-                        result.add(new IntroductionMessage(createWall(taskArray), true, "wall"));
-                    break;
-                case "(!build-wall-finished":
-                    if (instructionLevel != CostFunction.InstructionLevel.BLOCK)
-                        result.add(new IntroductionMessage(createWall(taskArray), false, "wall"));
-                    break;
-                case "(!build-wall":
-                    result.add(createWall(taskArray));
-                    break;
-                case "(!build-railing-starting":
-                    if (instructionLevel != CostFunction.InstructionLevel.BLOCK)
-                        result.add(new IntroductionMessage(createRailing(taskArray), true, "railing"));
-                    break;
-                case "(!build-railing-finished":
-                    if (instructionLevel != CostFunction.InstructionLevel.BLOCK)
-                        result.add(new IntroductionMessage(createRailing(taskArray), false, "railing"));
-                    break;
-                case "(!build-railing":
-                    result.add(createRailing(taskArray));
-                    break;
-                case "(!build-floor-starting":
-                    if (instructionLevel != CostFunction.InstructionLevel.BLOCK)
-                        result.add(new IntroductionMessage(createFloor(taskArray), true, "floor"));
-                    break;
-                case "(!build-floor-finished":
-                    if (instructionLevel != CostFunction.InstructionLevel.BLOCK)
-                        result.add(new IntroductionMessage(createFloor(taskArray), false, "floor"));
-                    break;
-                case "(!build-floor":
-                    result.add(createFloor(taskArray));
-                    break;
-                case "(!build-stairs-starting":
-                    if (instructionLevel != CostFunction.InstructionLevel.BLOCK)
-                        result.add(new IntroductionMessage(createStairs(taskArray), true, "staircase"));
-                    break;
-                case "(!build-stairs-finished":
-                    if (instructionLevel != CostFunction.InstructionLevel.BLOCK)
-                        result.add(new IntroductionMessage(createStairs(taskArray), false, "staircase"));
-                    break;
-                case "(!build-stairs":
-                    result.add(createStairs(taskArray));
-                    break;
-                case "(!place-block-hidden":
-                case "(!remove-it-row":
-                case "(!remove-it-railing":
-                case "(!remove-it-wall":
-                case "(!remove-it-stairs":
-                    break;
-                default:
-                    //log(task, "NewAction");
-                    System.out.println("New Action " + task);
-                    break;
+    /**
+     * The operators of a plan that result in an object, with the name of the object in introduction
+     * messages and the number of (integer) arguments.
+     */
+    enum PlanOperator {
+        BLOCK("place-block", "block", 3),
+        ROW("build-row", "row", 5),
+        WALL("build-wall", "wall", 6),
+        RAILING("build-railing", "railing", 5),
+        FLOOR("build-floor", "floor", 6),
+        STAIRS("build-stairs", "staircase", 7);
+
+        final String operatorName;
+        final String objectName;
+        final int numArgs;
+
+        PlanOperator(String operatorName, String objectName, int numArgs) {
+            this.operatorName = operatorName;
+            this.objectName = objectName;
+            this.numArgs = numArgs;
+        }
+    }
+
+    /** Whether a task builds an object or introduces it, e.g. {@code (!build-wall-starting ...)}. */
+    enum TaskPhase {
+        BUILD(""),
+        STARTING("-starting"),
+        FINISHED("-finished");
+
+        final String suffix;
+
+        TaskPhase(String suffix) {
+            this.suffix = suffix;
+        }
+    }
+
+    /** Receives the tasks of a plan, see {@link #readPlan(String, PlanTaskHandler)}. */
+    interface PlanTaskHandler {
+        /**
+         * @param args the arguments of the task; only the first {@code operator.numArgs} are valid
+         *             and the array is reused for the next task.
+         */
+        void task(PlanOperator operator, TaskPhase phase, int[] args);
+    }
+
+    /** Receives the blocks of a world, see {@link #readState(JSState, WorldBlockHandler)}. */
+    interface WorldBlockHandler {
+        void block(String type, int x, int y, int z);
+    }
+
+    private static final PlanOperator[] PLAN_OPERATORS = PlanOperator.values();
+    private static final TaskPhase[] TASK_PHASES = TaskPhase.values();
+
+    /**
+     * Creates the object of a task of the plan.  The arguments are the ones
+     * of the operator, e.g. x, y, z, length, height and direction for walls.
+     */
+    MinecraftObject createObject(PlanOperator operator, TaskPhase phase, int[] args) {
+        MinecraftObject object;
+        switch (operator) {
+            case BLOCK:
+                return new Block(args[0], args[1], args[2]);
+            case ROW:
+                object = createRow(args[0], args[1], args[2], args[3], args[4]);
+                break;
+            case WALL:
+                object = createWall(args[0], args[1], args[2], args[3], args[4], args[5]);
+                break;
+            case RAILING:
+                object = createRailing(args[0], args[1], args[2], args[3], args[4]);
+                break;
+            case FLOOR:
+                object = createFloor(args[0], args[1], args[2], args[3], args[4], args[5]);
+                break;
+            default: // STAIRS
+                object = createStairs(args[0], args[1], args[2], args[3], args[4], args[5], args[6]);
+                break;
+        }
+        if (phase == TaskPhase.BUILD) {
+            return object;
+        }
+        return new IntroductionMessage(object, phase == TaskPhase.STARTING, operator.objectName);
+    }
+
+    /**
+     * Reads the plan in a single pass by a {@link PlanTokenizer} and passes every task that results
+     * in an object to the {@code handler}.  Introductions are skipped on block level.
+     */
+    void readPlan(String jshopPlan, PlanTaskHandler handler) {
+        boolean withIntroductions = instructionLevel != CostFunction.InstructionLevel.BLOCK;
+        int[] args = new int[7];
+        var tokens = new PlanTokenizer(jshopPlan);
+        while (tokens.nextLine()) {
+            if (tokens.operatorIs("(!place-block")) {
+                tokens.skipArgument(); // block type
+                readArgs(tokens, PlanOperator.BLOCK, args);
+                handler.task(PlanOperator.BLOCK, TaskPhase.BUILD, args);
+            } else if (tokens.operatorStartsWith("(!build-")) {
+                if (!readBuildTask(tokens, withIntroductions, args, handler)) {
+                    System.out.println("New Action " + tokens.line());
+                }
+            } else if (!tokens.operatorIs("(!place-block-hidden")
+                    && !tokens.operatorStartsWith("(!remove-it-")) {
+                //log(task, "NewAction");
+                System.out.println("New Action " + tokens.line());
+            }
+        }
+    }
+
+    /**
+     * Passes a {@code (!build-*} task to the handler.
+     * @return false if the operator is unknown.
+     */
+    private static boolean readBuildTask(PlanTokenizer tokens, boolean withIntroductions,
+                                         int[] args, PlanTaskHandler handler) {
+        for (PlanOperator operator : PLAN_OPERATORS) {
+            if (operator == PlanOperator.BLOCK) {
+                continue;
+            }
+            for (TaskPhase phase : TASK_PHASES) {
+                if (tokens.operatorIs("(!", operator.operatorName, phase.suffix)) {
+                    if (phase == TaskPhase.BUILD || withIntroductions) {
+                        readArgs(tokens, operator, args);
+                        handler.task(operator, phase, args);
+                    }
+                    return true;
+                }
             }
         }
+        return false;
+    }
+
+    private static void readArgs(PlanTokenizer tokens, PlanOperator operator, int[] args) {
+        for (int i = 0; i < operator.numArgs; i++) {
+            args[i] = tokens.nextInt();
+        }
+    }
+
+    /**
+     * Converts the plan into {@link MinecraftObject}s.  The plan is read in a single pass
+     * by a {@link PlanTokenizer}, so apart from the resulting objects nothing is allocated per task.
+     */
+    public List<MinecraftObject> transformPlan(String jshopPlan) {
+        var result = new ArrayList<MinecraftObject>();
+        readPlan(jshopPlan, (operator, phase, args) -> result.add(createObject(operator, phase, args)));
         return result;
     }
 
     public HashSet<MinecraftObject> transformState(JSState state) {
         HashSet<MinecraftObject> set = new HashSet<>();
+        readState(state, (type, x, y, z) -> set.add(new UniqueBlock(type, x, y, z)));
+        return set;
+    }
+
+    /**
+     * Passes all blocks of a JSHOP state to the {@code handler}.
+     */
+    static void readState(JSState state, WorldBlockHandler handler) {
         for (JSPredicateForm term : state.atoms()) {
             String name = (String) term.elementAt(0);
             if (!name.equals("block-at")) {
@@ -356,9 +434,8 @@ public class PlanCreator {
             tmp = (JSTerm) term.elementAt(4);
             int z = (int) Double.parseDouble(tmp.toStr().toString());
             //System.out.println("Block: " + type + " " + x + " " + y + " "+ z);
-            set.add(new UniqueBlock(type, x, y, z));
+            handler.block(type, x, y, z);
         }
-        return set;
     }
 
 }
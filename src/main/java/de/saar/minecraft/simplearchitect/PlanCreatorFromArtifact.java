@@ -0,0 +1,97 @@
+package de.saar.minecraft.simplearchitect;
+
+import de.saar.coli.minecraft.relationextractor.MinecraftObject;
+import de.saar.coli.minecraft.relationextractor.UniqueBlock;
+import umd.cs.shop.costs.CostFunction;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Plan creator that memory-maps a file compiled by {@link PlanArtifact} instead of running JSHOP.
+ * Yields the same world and plan as {@link PlanCreator}.
+ */
+public class PlanCreatorFromArtifact extends PlanCreator {
+
+    /**
+     * @throws IOException if the artifact cannot be read, is malformed, was compiled for a different
+     *                     scenario or level, or is stale, i.e. the resources changed since it was compiled.
+     */
+    public PlanCreatorFromArtifact(String scenario, CostFunction.InstructionLevel instructionLevel, Path file)
+            throws IOException {
+        super();
+        this.instructionLevel = instructionLevel;
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            this.plan = load(buffer, scenario, file);
+        } catch (RuntimeException e) {
+            // BufferUnderflowException, IndexOutOfBoundsException etc. for malformed files
+            throw new IOException("malformed plan artifact " + file, e);
+        }
+    }
+
+    private List<MinecraftObject> load(ByteBuffer buffer, String scenario, Path file) throws IOException {
+        if (buffer.getInt() != PlanArtifact.MAGIC || buffer.getInt() != PlanArtifact.VERSION) {
+            throw new IOException("not a plan artifact (or an old version): " + file);
+        }
+        byte[] checksum = new byte[PlanArtifact.CHECKSUM_LENGTH];
+        buffer.get(checksum);
+        if (!scenario.equals(readString(buffer)) || !instructionLevel.name().equals(readString(buffer))) {
+            throw new IOException("plan artifact " + file + " is for a different scenario or level");
+        }
+        if (!Arrays.equals(checksum, PlanArtifact.sourceChecksum(scenario, instructionLevel))) {
+            throw new IOException("stale plan artifact " + file);
+        }
+
+        String[] types = new String[buffer.getInt()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = readString(buffer);
+        }
+        int numBlocks = buffer.getInt();
+        Set<MinecraftObject> initialWorld = new HashSet<>(numBlocks * 2);
+        for (int i = 0; i < numBlocks; i++) {
+            String type = types[buffer.getShort()];
+            initialWorld.add(new UniqueBlock(type, buffer.getInt(), buffer.getInt(), buffer.getInt()));
+        }
+
+        var operators = PlanOperator.values();
+        var phases = TaskPhase.values();
+        int[] args = new int[7];
+        int numTasks = buffer.getInt();
+        var result = new ArrayList<MinecraftObject>(numTasks);
+        for (int i = 0; i < numTasks; i++) {
+            PlanOperator operator = operators[buffer.get()];
+            TaskPhase phase = phases[buffer.get()];
+            for (int j = 0; j < operator.numArgs; j++) {
+                args[j] = buffer.getInt();
+            }
+            result.add(createObject(operator, phase, args));
+        }
+        if (buffer.hasRemaining()) {
+            throw new IOException("trailing data in plan artifact " + file);
+        }
+
+        world = Collections.unmodifiableSet(initialWorld);
+        blocksCurrentWorld = BlockIndex.of(world);
+        return Collections.unmodifiableList(result);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
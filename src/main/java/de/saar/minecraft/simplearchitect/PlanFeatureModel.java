@@ -0,0 +1,221 @@
+package de.saar.minecraft.simplearchitect;
+
+import de.saar.minecraft.analysis.WeightEstimator;
+import de.up.ling.tree.Tree;
+import org.tinylog.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The cost of a plan as a linear function of the grammar weights.
+ *
+ * <p>The cost of a plan is the negative sum of the weights of its derivation trees
+ * (see {@link PlanCostEvaluator#getCost}), and the weight of a tree is the sum of the weights
+ * of its rules.  This model realizes the plan once, counts how often each rule is used and then
+ * computes the cost under other weights as a dot product.  A rule used in a tree that was realized
+ * with a first occurrence weight is counted as the feature {@code "first:" + rule}.
+ *
+ * <p>The counts only describe the trees realized under the weights the model was built with;
+ * under very different weights the realizer would choose other trees, so callers should rebuild
+ * the model if {@link #isValidFor} is false.
+ * If the tree weights turn out not to be additive, {@link #isAdditive()} is false and the
+ * trees have to be rescored by the realizer, see {@link #rescore}.
+ */
+public class PlanFeatureModel {
+    static final String FIRST_OCCURRENCE_PREFIX = "first:";
+    private static final double ADDITIVITY_EPSILON = 1e-6;
+
+    private final List<Tree<String>> trees = new ArrayList<>();
+    /** for every tree, the rule with the first occurrence weight or null */
+    private final List<String> firstOccurrenceRules = new ArrayList<>();
+    /** how often every feature is used in the trees */
+    private final Map<String, Integer> counts = new HashMap<>();
+    /** the weight of every rule used in the trees, as set on the realizer the model was built with */
+    private final Map<String, Double> ruleWeights = new HashMap<>();
+    private final WeightEstimator.WeightResult weights;
+    /** the weight of trees the realizer could not generate, which does not depend on the weights */
+    private double constantWeight = 0;
+    private boolean additive = true;
+
+    private PlanFeatureModel(WeightEstimator.WeightResult weights) {
+        // copy the weights, the caller might modify them later
+        this.weights = weights == null ? null : WeightEstimator.WeightResult.fromJson(weights.toJson());
+    }
+
+    /**
+     * Realizes the plan of {@code planCreator} with {@code realizers} and counts the rules of all trees.
+     */
+    public static PlanFeatureModel create(PlanCreator planCreator, RealizerPool realizers) {
+        var weights = realizers.getWeights();
+        var model = new PlanFeatureModel(weights);
+        List<Double> treeWeights = new ArrayList<>();
+        PlanCostEvaluator.realizePlan(realizers, planCreator, (mco, tree, realizer, firstOccurrenceRule) -> {
+            double weight = realizer.getWeightForTree(tree);
+            if (tree == null) {
+                model.constantWeight += weight;
+                return;
+            }
+            model.trees.add(tree);
+            model.firstOccurrenceRules.add(firstOccurrenceRule);
+            treeWeights.add(weight);
+            model.count(tree, firstOccurrenceRule);
+        });
+        // probe the weight of every rule with a tree consisting only of that rule
+        realizers.withRealizer((realizer) -> {
+            for (String feature : model.counts.keySet()) {
+                String rule = feature.startsWith(FIRST_OCCURRENCE_PREFIX)
+                        ? feature.substring(FIRST_OCCURRENCE_PREFIX.length()) : feature;
+                model.ruleWeights.computeIfAbsent(rule, (r) -> realizer.getWeightForTree(Tree.create(r)));
+            }
+            return null;
+        });
+        for (int i = 0; i < model.trees.size(); i++) {
+            double expected = treeWeights.get(i);
+            double actual = model.getTreeWeight(model.trees.get(i), model.firstOccurrenceRules.get(i), weights);
+            if (Math.abs(expected - actual) > ADDITIVITY_EPSILON * Math.max(1, Math.abs(expected))) {
+                Logger.warn("tree weights are not additive ({} vs. {}), rescoring trees instead", expected, actual);
+                model.additive = false;
+                break;
+            }
+        }
+        return model;
+    }
+
+    private void count(Tree<String> tree, String firstOccurrenceRule) {
+        String label = tree.getLabel();
+        String feature = label.equals(firstOccurrenceRule) ? FIRST_OCCURRENCE_PREFIX + label : label;
+        counts.merge(feature, 1, Integer::sum);
+        for (var child : tree.getChildren()) {
+            count(child, firstOccurrenceRule);
+        }
+    }
+
+    private double getTreeWeight(Tree<String> tree, String firstOccurrenceRule,
+                                 WeightEstimator.WeightResult newWeights) {
+        String label = tree.getLabel();
+        double result = label.equals(firstOccurrenceRule)
+                ? getFeatureWeight(FIRST_OCCURRENCE_PREFIX + label, newWeights)
+                : getFeatureWeight(label, newWeights);
+        for (var child : tree.getChildren()) {
+            result += getTreeWeight(child, firstOccurrenceRule, newWeights);
+        }
+        return result;
+    }
+
+    /**
+     * The weight of a feature under {@code newWeights}; rules without a weight in {@code newWeights}
+     * keep the weight they had when the model was built (null for rules not used in the trees).
+     */
+    private Double getFeatureWeight(String feature, WeightEstimator.WeightResult newWeights) {
+        if (feature.startsWith(FIRST_OCCURRENCE_PREFIX)) {
+            String rule = feature.substring(FIRST_OCCURRENCE_PREFIX.length());
+            if (newWeights != null && newWeights.firstOccurenceWeights.containsKey(rule)) {
+                return newWeights.firstOccurenceWeights.get(rule);
+            }
+            return getFeatureWeight(rule, newWeights);
+        }
+        if (newWeights != null && newWeights.weights.containsKey(feature)) {
+            return newWeights.weights.get(feature);
+        }
+        return ruleWeights.get(feature);
+    }
+
+    /**
+     * Whether the cost can be computed as a dot product, see {@link #getCost}.
+     */
+    public boolean isAdditive() {
+        return additive;
+    }
+
+    /**
+     * Returns the cost of the realized trees under {@code newWeights} as a dot product of the
+     * rule counts and the weights.
+     */
+    public double getCost(WeightEstimator.WeightResult newWeights) {
+        if (!additive) {
+            throw new IllegalStateException("tree weights are not additive, use rescore()");
+        }
+        double weight = constantWeight;
+        for (var entry : counts.entrySet()) {
+            weight += entry.getValue() * getFeatureWeight(entry.getKey(), newWeights);
+        }
+        return -weight;
+    }
+
+    /**
+     * Returns the cost of the realized trees under the weights of {@code realizers} by letting them score
+     * the trees again, with the first occurrence weights like {@link PlanCostEvaluator#realizePlan}.
+     */
+    public double rescore(RealizerPool realizers) {
+        double weight = constantWeight;
+        for (int i = 0; i < trees.size(); i++) {
+            String rule = firstOccurrenceRules.get(i);
+            var tree = trees.get(i);
+            var pool = rule == null ? realizers : realizers.forFirstOccurrence(rule);
+            weight += pool.withRealizer((realizer) -> realizer.getWeightForTree(tree));
+        }
+        return -weight;
+    }
+
+    /**
+     * Whether no weight differs by more than {@code tolerance} between {@code newWeights} and the weights
+     * the model was built with.  This includes the rules that are not used in the trees: under other
+     * weights, the realizer might choose trees with other rules, and then the model should be rebuilt.
+     */
+    public boolean isValidFor(WeightEstimator.WeightResult newWeights, double tolerance) {
+        Set<String> features = new HashSet<>(counts.keySet());
+        for (var w : Arrays.asList(weights, newWeights)) {
+            if (w != null) {
+                features.addAll(w.weights.keySet());
+                for (String rule : w.firstOccurenceWeights.keySet()) {
+                    features.add(FIRST_OCCURRENCE_PREFIX + rule);
+                }
+            }
+        }
+        for (String feature : features) {
+            Double oldWeight = getFeatureWeight(feature, weights);
+            Double newWeight = getFeatureWeight(feature, newWeights);
+            if (oldWeight == null || newWeight == null) {
+                // a rule with a weight on one side only, its weight on the other side is not known
+                if (!Objects.equals(oldWeight, newWeight)) {
+                    return false;
+                }
+            } else if (Math.abs(newWeight - oldWeight) > tolerance) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of trees that differ from the ones of {@code other},
+     * e.g. after rebuilding a model for new weights.
+     */
+    public int countChangedTrees(PlanFeatureModel other) {
+        int result = Math.abs(trees.size() - other.trees.size());
+        for (int i = 0; i < Math.min(trees.size(), other.trees.size()); i++) {
+            if (!Objects.equals(trees.get(i).toString(), other.trees.get(i).toString())) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns how often every feature is used in the realized trees.
+     */
+    public Map<String, Integer> getCounts() {
+        return Map.copyOf(counts);
+    }
+
+    public List<Tree<String>> getTrees() {
+        return List.copyOf(trees);
+    }
+}
@@ -0,0 +1,140 @@
+package de.saar.minecraft.simplearchitect;
+
+/**
+ * Reads a JSHOP plan (one task per line, e.g. {@code (!build-wall 1 66 1 3 2 1)})
+ * in a single pass without splitting it into substrings.  Operators are compared
+ * in place and numbers are parsed directly from the plan text.
+ * Used by {@link PlanCreator#transformPlan(String)}.
+ */
+class PlanTokenizer {
+    private final String text;
+    /** start of the next line, larger than text.length() once all lines are read */
+    private int next = 0;
+    private int lineStart;
+    private int lineEnd;
+    private int operatorEnd;
+    /** current position in the line */
+    private int pos;
+
+    PlanTokenizer(String text) {
+        this.text = text;
+    }
+
+    /**
+     * Advances to the next non-empty line.
+     * @return false if there are no more lines.
+     */
+    boolean nextLine() {
+        while (next <= text.length()) {
+            lineStart = next;
+            lineEnd = text.indexOf('\n', lineStart);
+            if (lineEnd < 0) {
+                lineEnd = text.length();
+            }
+            next = lineEnd + 1;
+            pos = lineStart;
+            skipSeparators();
+            if (pos == lineEnd) {
+                continue;
+            }
+            lineStart = pos;
+            skipToken();
+            operatorEnd = pos;
+            return true;
+        }
+        return false;
+    }
+
+    /** true if the operator of the current line is exactly {@code operator}. */
+    boolean operatorIs(String operator) {
+        return operatorEnd - lineStart == operator.length()
+                && text.startsWith(operator, lineStart);
+    }
+
+    /** true if the operator of the current line is {@code prefix + name + suffix}. */
+    boolean operatorIs(String prefix, String name, String suffix) {
+        int length = prefix.length() + name.length() + suffix.length();
+        return operatorEnd - lineStart == length
+                && text.startsWith(prefix, lineStart)
+                && text.startsWith(name, lineStart + prefix.length())
+                && text.startsWith(suffix, lineStart + prefix.length() + name.length());
+    }
+
+    boolean operatorStartsWith(String prefix) {
+        return operatorEnd - lineStart >= prefix.length()
+                && text.startsWith(prefix, lineStart);
+    }
+
+    /** the complete current line, only meant for log messages. */
+    String line() {
+        return text.substring(lineStart, lineEnd).trim();
+    }
+
+    /** Skips the next argument, e.g. the block type of place-block. */
+    void skipArgument() {
+        skipSeparators();
+        skipToken();
+    }
+
+    /**
+     * Parses the next argument as an integer.  The result is the same as
+     * {@code (int) Double.parseDouble(argument)}, i.e. decimals are truncated;
+     * arguments that are not plain decimal numbers are passed on to
+     * {@link Double#parseDouble(String)}.
+     */
+    int nextInt() {
+        skipSeparators();
+        int start = pos;
+        boolean negative = false;
+        if (pos < lineEnd && (text.charAt(pos) == '-' || text.charAt(pos) == '+')) {
+            negative = text.charAt(pos) == '-';
+            pos++;
+        }
+        int digitsStart = pos;
+        long value = 0;
+        while (pos < lineEnd && isDigit(text.charAt(pos))) {
+            value = value * 10 + (text.charAt(pos) - '0');
+            pos++;
+        }
+        int numDigits = pos - digitsStart;
+        if (pos < lineEnd && text.charAt(pos) == '.') {
+            pos++;
+            while (pos < lineEnd && isDigit(text.charAt(pos))) {
+                pos++;
+            }
+        }
+        if (numDigits == 0 || numDigits > 18 || !atTokenEnd()) {
+            skipToken();
+            return (int) Double.parseDouble(text.substring(start, pos));
+        }
+        if (negative) {
+            value = -value;
+        }
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, value));
+    }
+
+    private boolean atTokenEnd() {
+        return pos == lineEnd || isSeparator(text.charAt(pos));
+    }
+
+    private void skipSeparators() {
+        while (pos < lineEnd && isSeparator(text.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private void skipToken() {
+        while (pos < lineEnd && !isSeparator(text.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private static boolean isSeparator(char c) {
+        // the characters String.trim() and Double.parseDouble ignore
+        return c <= ' ';
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
@@ -0,0 +1,74 @@
+package de.saar.minecraft.simplearchitect;
+
+import de.saar.coli.minecraft.MinecraftRealizer;
+import org.tinylog.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Checksum of the realizer library and its grammar, so that the caches that store realizer results
+ * ({@link SeedGameCache}, {@link PlanCostCache}) can tell that a file was written by another realizer.
+ */
+public class RealizerChecksum {
+    /** the grammar of the realizer, a resource of the realizer library */
+    private static final String GRAMMAR_RESOURCE = "/de/saar/coli/minecraft/minecraft.irtg";
+
+    private static String checksum = null;
+
+    private RealizerChecksum() {}
+
+    /**
+     * Returns the SHA-256 (hex) of the realizer library; it is computed once per process.
+     */
+    public static synchronized String get() {
+        if (checksum == null) {
+            MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
+            update(digest);
+            checksum = HexFormat.of().formatHex(digest.digest());
+        }
+        return checksum;
+    }
+
+    /**
+     * Adds the jar of the realizer library to {@code digest}, which covers both the grammar and the version
+     * of the realizer.  If the realizer is not loaded from a jar (e.g. in an IDE), the grammar resource
+     * and the version are added instead.
+     */
+    public static void update(MessageDigest digest) {
+        var source = MinecraftRealizer.class.getProtectionDomain().getCodeSource();
+        try {
+            if (source != null) {
+                Path library = Path.of(source.getLocation().toURI());
+                if (Files.isRegularFile(library)) {
+                    digest.update(Files.readAllBytes(library));
+                    return;
+                }
+            }
+        } catch (URISyntaxException | IllegalArgumentException | IOException e) {
+            Logger.warn("could not read the realizer library, using its grammar instead: {}", e);
+        }
+        try (InputStream in = MinecraftRealizer.class.getResourceAsStream(GRAMMAR_RESOURCE)) {
+            if (in == null) {
+                throw new RuntimeException("resource not found: " + GRAMMAR_RESOURCE);
+            }
+            digest.update(in.readAllBytes());
+        } catch (IOException e) {
+            throw new RuntimeException("could not read " + GRAMMAR_RESOURCE, e);
+        }
+        String version = String.valueOf(MinecraftRealizer.class.getPackage().getImplementationVersion());
+        digest.update(version.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,235 @@
+package de.saar.minecraft.simplearchitect;
+
+import de.saar.coli.minecraft.MinecraftRealizer;
+import de.saar.minecraft.analysis.WeightEstimator;
+import de.up.ling.tree.Tree;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Realizers that use the same weights, shared by all games and cost evaluations with these weights.
+ *
+ * <p>A realizer holds the complete grammar and is not thread-safe.  Instead of one realizer per game,
+ * a game borrows a realizer from the pool for its weights for every call (see {@link #withRealizer}),
+ * so the number of realizers only grows with the number of concurrent calls, not with the number of games.
+ * A pool has at most {@link #setMaxRealizers maxRealizers} realizers; further callers wait until one is
+ * returned.  The first realizer is created together with the pool, i.e. while the game is constructed.
+ * The pools are shared by the fingerprint of the weights (see {@link PlanCostEvaluator#weightsFingerprint}).
+ * The first occurrence weight of a rule is set on a borrowed realizer while it is used and the previous
+ * weight is restored before the realizer is returned, see {@link #forFirstOccurrence}, so first occurrences
+ * need no realizers of their own and every realizer in the pool has the pool's weights when it is idle.
+ *
+ * <p>This saves memory only for weights that many games use (default, file or optimal weights): all these
+ * games together hold between one and {@code maxRealizers} grammars instead of one per game.
+ * The realizer cannot share its grammar between realizers with different weights, so there are no
+ * per-game weight overlays on a single grammar: games with randomized or sampled weights still hold a
+ * grammar of their own in a private pool, see {@link #ofPrivate(MinecraftRealizer)}.
+ */
+public class RealizerPool {
+    /** number of shared pools that are kept after the last game with their weights */
+    private static final int CAPACITY = 16;
+
+    private static int maxRealizers = Runtime.getRuntime().availableProcessors();
+
+    private static final Map<String, RealizerPool> shared = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, RealizerPool> eldest) {
+            return size() > CAPACITY;
+        }
+    };
+
+    /** the weights of all realizers of this pool, null for the default weights */
+    private final WeightEstimator.WeightResult weights;
+    /** the only realizer of a private pool, null for shared pools */
+    private final MinecraftRealizer privateRealizer;
+    /** for first occurrence pools: the pool whose realizers are borrowed, otherwise null */
+    private final RealizerPool base;
+    /** for first occurrence pools: the rule whose first occurrence weight is set while a realizer is used */
+    private final String firstOccurrenceRule;
+    private final ConcurrentLinkedDeque<MinecraftRealizer> idle = new ConcurrentLinkedDeque<>();
+    /** one permit for every realizer that can still be borrowed or created */
+    private final Semaphore available;
+    private final AtomicInteger numCreated = new AtomicInteger(0);
+
+    private RealizerPool(WeightEstimator.WeightResult weights, MinecraftRealizer privateRealizer, int maxRealizers) {
+        this.weights = weights;
+        this.privateRealizer = privateRealizer;
+        this.base = null;
+        this.firstOccurrenceRule = null;
+        this.available = new Semaphore(maxRealizers, true);
+    }
+
+    private RealizerPool(RealizerPool base, String firstOccurrenceRule) {
+        this.weights = base.weights;
+        this.privateRealizer = base.privateRealizer;
+        this.base = base;
+        this.firstOccurrenceRule = firstOccurrenceRule;
+        this.available = null;
+    }
+
+    /**
+     * Sets the maximal number of realizers of a shared pool, for pools created afterwards.
+     * The default is the number of processors.
+     */
+    public static void setMaxRealizers(int maxRealizers) {
+        if (maxRealizers < 1) {
+            throw new IllegalArgumentException("a pool needs at least one realizer: " + maxRealizers);
+        }
+        RealizerPool.maxRealizers = maxRealizers;
+    }
+
+    /**
+     * Returns the shared pool of realizers with {@code weights} (null for the default weights),
+     * with at least one realizer.
+     */
+    public static RealizerPool shared(WeightEstimator.WeightResult weights) {
+        String fingerprint = PlanCostEvaluator.weightsFingerprint(weights);
+        RealizerPool pool;
+        synchronized (shared) {
+            pool = shared.computeIfAbsent(fingerprint, (fp) -> new RealizerPool(
+                    weights == null ? null : copy(weights), null, maxRealizers));
+        }
+        // outside of the lock, loading the grammar takes a while
+        pool.createFirstRealizer();
+        return pool;
+    }
+
+    /**
+     * Creates a shared pool that is not registered, e.g. for tests.
+     */
+    static RealizerPool create(WeightEstimator.WeightResult weights, int maxRealizers) {
+        var pool = new RealizerPool(weights, null, maxRealizers);
+        pool.createFirstRealizer();
+        return pool;
+    }
+
+    private synchronized void createFirstRealizer() {
+        if (numCreated.get() == 0) {
+            idle.add(PlanCostEvaluator.createRealizer(weights));
+            numCreated.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns a pool that only consists of {@code realizer}, e.g. a realizer with randomized weights.
+     * Calls through the pool synchronize on the realizer.
+     */
+    public static RealizerPool ofPrivate(MinecraftRealizer realizer) {
+        return ofPrivate(realizer, null);
+    }
+
+    /**
+     * Same as {@link #ofPrivate(MinecraftRealizer)} for a realizer that uses {@code weights}, e.g. weights
+     * that are only used once and are not worth sharing.
+     */
+    public static RealizerPool ofPrivate(MinecraftRealizer realizer, WeightEstimator.WeightResult weights) {
+        return new RealizerPool(weights, realizer, 1);
+    }
+
+    private static WeightEstimator.WeightResult copy(WeightEstimator.WeightResult weights) {
+        return WeightEstimator.WeightResult.fromJson(weights.toJson());
+    }
+
+    /**
+     * Returns the weights of the realizers of this pool, null for the default or randomized weights.
+     * The caller must not modify them.
+     */
+    public WeightEstimator.WeightResult getWeights() {
+        return weights;
+    }
+
+    /**
+     * Returns the pool for this pool's weights, except that {@code rule} has its first occurrence weight
+     * (or this pool if there is no first occurrence weight for {@code rule}).
+     * The returned pool borrows the realizers of this pool, see {@link #withFirstOccurrence}.
+     */
+    public RealizerPool forFirstOccurrence(String rule) {
+        if (firstOccurrenceRule != null) {
+            throw new IllegalStateException("already a pool for the first occurrence of " + firstOccurrenceRule);
+        }
+        if (weights == null || !weights.firstOccurenceWeights.containsKey(rule)) {
+            return this;
+        }
+        return new RealizerPool(this, rule);
+    }
+
+    /**
+     * Applies {@code function} to {@code realizer}, which the caller uses exclusively, with the first
+     * occurrence weight of {@code rule} in {@code weights}, and restores the previous weight of {@code rule}
+     * afterwards.
+     */
+    static <T> T withFirstOccurrence(MinecraftRealizer realizer, WeightEstimator.WeightResult weights, String rule,
+                                     Function<MinecraftRealizer, T> function) {
+        // the weight the rule had before, which need not be in the weights (e.g. the grammar default);
+        // a tree consisting only of the rule has exactly its weight, see PlanFeatureModel
+        double previous = realizer.getWeightForTree(Tree.create(rule));
+        realizer.setExpectedDurations(Map.of(rule, weights.firstOccurenceWeights.get(rule)), false);
+        try {
+            return function.apply(realizer);
+        } finally {
+            realizer.setExpectedDurations(Map.of(rule, previous), false);
+        }
+    }
+
+    /**
+     * Applies {@code function} to a realizer of this pool that no other thread uses at the same time,
+     * waiting for one if all realizers are in use and the pool cannot create more.
+     * {@code function} must not change the weights of the realizer and must not borrow another realizer
+     * from the same pool (or one of its first occurrence pools).
+     */
+    public <T> T withRealizer(Function<MinecraftRealizer, T> function) {
+        if (base != null) {
+            return base.withRealizer((realizer) ->
+                    withFirstOccurrence(realizer, weights, firstOccurrenceRule, function));
+        }
+        if (privateRealizer != null) {
+            synchronized (privateRealizer) {
+                return function.apply(privateRealizer);
+            }
+        }
+        try {
+            available.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted while waiting for a realizer", e);
+        }
+        MinecraftRealizer realizer = null;
+        try {
+            realizer = idle.pollFirst();
+            if (realizer == null) {
+                realizer = PlanCostEvaluator.createRealizer(weights);
+                numCreated.incrementAndGet();
+            }
+            return function.apply(realizer);
+        } finally {
+            if (realizer != null) {
+                // most recently used first, to keep the number of realizers in use low
+                idle.addFirst(realizer);
+            }
+            available.release();
+        }
+    }
+
+    /**
+     * Whether this pool only consists of a realizer of a single game, see {@link #ofPrivate(MinecraftRealizer)}.
+     */
+    public boolean isPrivate() {
+        return privateRealizer != null;
+    }
+
+    /**
+     * Returns the number of realizers of this pool (idle or in use); first occurrence pools have none
+     * of their own.
+     */
+    public int getNumRealizers() {
+        if (base != null) {
+            return base.getNumRealizers();
+        }
+        return privateRealizer != null ? 1 : numCreated.get();
+    }
+}
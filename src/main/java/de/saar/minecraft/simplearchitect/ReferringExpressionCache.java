@@ -0,0 +1,129 @@
+package de.saar.minecraft.simplearchitect;
+
+import de.saar.coli.minecraft.MinecraftRealizer;
+import de.saar.coli.minecraft.relationextractor.Block;
+import de.saar.coli.minecraft.relationextractor.MinecraftObject;
+import de.saar.coli.minecraft.relationextractor.Relation.Orientation;
+import de.up.ling.tree.Tree;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bounded cache in front of {@link MinecraftRealizer#generateReferringExpressionTree} for one game.
+ *
+ * <p>Entries are keyed by a world version instead of the world itself, so lookups do not need to hash
+ * the whole world.  The architect has to update the version whenever the world changes, see
+ * {@link WorldVersion}.  Failed realizations (null trees) are cached as well.
+ *
+ * <p>The realizers are borrowed from a {@link RealizerPool} for every call.
+ */
+public class ReferringExpressionCache {
+    private record Key(WorldVersion worldVersion, MinecraftObject target, Set<MinecraftObject> it,
+                       Orientation orientation) {}
+
+    /**
+     * Identifies the content of a world without hashing all of it for every lookup: the sum and the XOR of two
+     * independent 64 bit fingerprints of its objects (see {@link #fingerprint(MinecraftObject, long)})
+     * and the number of objects.  Both are updated in constant time when an object is added or removed,
+     * and as they only depend on the content of the world, placing a block and removing it again leads back
+     * to the previous version and its cached trees.  Two different worlds would need to agree on the size
+     * and on both fingerprints to share a version.
+     */
+    public record WorldVersion(long sum, long xor, int size) {
+        public static final WorldVersion EMPTY = new WorldVersion(0, 0, 0);
+
+        public WorldVersion add(MinecraftObject object) {
+            return new WorldVersion(sum + fingerprint(object, SUM_SEED), xor ^ fingerprint(object, XOR_SEED),
+                    size + 1);
+        }
+
+        public WorldVersion remove(MinecraftObject object) {
+            return new WorldVersion(sum - fingerprint(object, SUM_SEED), xor ^ fingerprint(object, XOR_SEED),
+                    size - 1);
+        }
+    }
+
+    private static final long SUM_SEED = 0x9E3779B97F4A7C15L;
+    private static final long XOR_SEED = 0xD1B54A32D192ED03L;
+
+    private final RealizerPool realizers;
+    private final Map<Key, Tree<String>> cache;
+    private int hits = 0;
+    private int misses = 0;
+
+    public ReferringExpressionCache(RealizerPool realizers, int capacity) {
+        this.realizers = realizers;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Tree<String>> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the tree for {@code target}, running the realizer only if it was not computed for the
+     * same world version, "it" and orientation before.
+     */
+    public Tree<String> generateReferringExpressionTree(WorldVersion worldVersion, Set<MinecraftObject> world,
+                                                        MinecraftObject target, Set<MinecraftObject> it,
+                                                        Orientation orientation) {
+        var key = new Key(worldVersion, target, Set.copyOf(it), orientation);
+        synchronized (this) {
+            if (cache.containsKey(key)) {
+                hits++;
+                return cache.get(key);
+            }
+            misses++;
+        }
+        Tree<String> tree = realizers.withRealizer((realizer) ->
+                realizer.generateReferringExpressionTree(world, target, it, orientation));
+        synchronized (this) {
+            cache.put(key, tree);
+        }
+        return tree;
+    }
+
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    public synchronized int getMisses() {
+        return misses;
+    }
+
+    public synchronized String statsAsJson() {
+        return "{\"hits\":" + hits + ",\"misses\":" + misses + ",\"size\":" + cache.size() + "}";
+    }
+
+    /**
+     * Returns a 64 bit fingerprint of {@code object} that depends on its type and position, not on its
+     * 32 bit hash code (e.g. different blocks have the same {@code hashCode} if their coordinates collide
+     * under {@code Objects.hash}).  Blocks are hashed from their packed coordinates, all other objects from
+     * their JSON representation, which contains the type and all coordinates.
+     */
+    static long fingerprint(MinecraftObject object, long seed) {
+        long h;
+        if (object.getClass() == Block.class) {
+            var block = (Block) object;
+            h = mix(BlockIndex.pack(block.xpos, block.ypos, block.zpos) ^ seed);
+        } else {
+            // 64 bit FNV-1a
+            h = 0xCBF29CE484222325L ^ seed;
+            String json = object.asJson();
+            for (int i = 0; i < json.length(); i++) {
+                h = (h ^ json.charAt(i)) * 0x100000001B3L;
+            }
+        }
+        return mix(h + seed);
+    }
+
+    /** finalizer of SplitMix64 */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
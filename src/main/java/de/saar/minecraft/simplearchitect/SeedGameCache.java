@@ -0,0 +1,170 @@
+package de.saar.minecraft.simplearchitect;
+
+import de.up.ling.tree.ParseException;
+import de.up.ling.tree.Tree;
+import de.up.ling.tree.TreeParser;
+import org.tinylog.Logger;
+import umd.cs.shop.costs.CostFunction;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Process-wide cache of the seed games (see {@link SimpleArchitect#generateSeedInstructionTrees}) used with
+ * {@code addSeedGames}: the instruction trees for the plans of all scenarios at all instruction levels,
+ * generated with the default weights.
+ *
+ * <p>The trees are generated only once per process, in parallel for every scenario and level,
+ * and are stored in a file in the cache directory.  The name of the file contains a checksum of the realizer
+ * library (with the grammar) and of the resources the plans are computed from, so a changed grammar,
+ * realizer or plan never reads stale trees.
+ */
+public class SeedGameCache {
+    private static final List<String> SCENARIOS = List.of("house", "bridge");
+    private static final String GAME_SEPARATOR = "#game";
+
+    private static Path cacheDirectory = Path.of(System.getProperty("java.io.tmpdir"));
+    private static List<List<Tree<String>>> seedGames = null;
+
+    private SeedGameCache() {}
+
+    /**
+     * Sets the directory for the cache file; null or an empty string selects the temporary directory.
+     */
+    public static synchronized void setCacheDirectory(String directory) {
+        cacheDirectory = Path.of(directory == null || directory.isEmpty()
+                ? System.getProperty("java.io.tmpdir") : directory);
+    }
+
+    /**
+     * Returns the seed games, one list of trees for every scenario and instruction level.
+     * The consumer may freely edit the returned lists.
+     */
+    public static List<List<Tree<String>>> get() {
+        List<List<Tree<String>>> games;
+        synchronized (SeedGameCache.class) {
+            if (seedGames == null) {
+                seedGames = load();
+            }
+            games = seedGames;
+        }
+        List<List<Tree<String>>> result = new ArrayList<>();
+        for (var game : games) {
+            result.add(new ArrayList<>(game));
+        }
+        return result;
+    }
+
+    private static List<List<Tree<String>>> load() {
+        Path file = cacheDirectory.resolve("seed-games-" + checksum() + ".txt");
+        if (Files.exists(file)) {
+            try {
+                var result = read(file);
+                Logger.info("read seed games from {}", file);
+                return result;
+            } catch (IOException | ParseException e) {
+                Logger.warn("could not read seed games from {}, generating them again: {}", file, e);
+            }
+        }
+        var result = generate();
+        try {
+            write(file, result);
+        } catch (IOException e) {
+            Logger.warn("could not write seed games to {}: {}", file, e);
+        }
+        return result;
+    }
+
+    /**
+     * Generates the trees for every scenario and level in parallel, with realizers from the
+     * shared pool for the default weights.
+     */
+    private static List<List<Tree<String>>> generate() {
+        long start = System.currentTimeMillis();
+        List<CompletableFuture<List<Tree<String>>>> futures = new ArrayList<>();
+        for (String scenario : SCENARIOS) {
+            for (var il : CostFunction.InstructionLevel.values()) {
+                futures.add(CompletableFuture.supplyAsync(() -> RealizerPool.shared(null).withRealizer(
+                        (realizer) -> SimpleArchitect.generateSeedInstructionTrees(
+                                realizer, PlanCache.get(scenario, il)))));
+            }
+        }
+        List<List<Tree<String>>> result = new ArrayList<>();
+        for (var future : futures) {
+            result.add(List.copyOf(future.join()));
+        }
+        Logger.info("generated seed games in {} ms", System.currentTimeMillis() - start);
+        return List.copyOf(result);
+    }
+
+    /**
+     * SHA-256 of the realizer library (which contains the grammar) and of the resources of all plans.
+     */
+    private static String checksum() {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        RealizerChecksum.update(digest);
+        for (String scenario : SCENARIOS) {
+            for (var il : CostFunction.InstructionLevel.values()) {
+                digest.update(PlanArtifact.sourceChecksum(scenario, il));
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest(), 0, 16);
+    }
+
+    /**
+     * Reads the games: every game starts with a line {@value #GAME_SEPARATOR}, followed by one tree per line.
+     */
+    private static List<List<Tree<String>>> read(Path file) throws IOException, ParseException {
+        List<List<Tree<String>>> result = new ArrayList<>();
+        List<Tree<String>> game = null;
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (line.equals(GAME_SEPARATOR)) {
+                if (game != null) {
+                    result.add(List.copyOf(game));
+                }
+                game = new ArrayList<>();
+            } else if (!line.isEmpty()) {
+                if (game == null) {
+                    throw new IOException("malformed seed game file");
+                }
+                game.add(TreeParser.parse(line));
+            }
+        }
+        if (game != null) {
+            result.add(List.copyOf(game));
+        }
+        if (result.size() != SCENARIOS.size() * CostFunction.InstructionLevel.values().length) {
+            throw new IOException("wrong number of seed games: " + result.size());
+        }
+        return List.copyOf(result);
+    }
+
+    private static void write(Path file, List<List<Tree<String>>> games) throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (var game : games) {
+            lines.add(GAME_SEPARATOR);
+            for (var tree : game) {
+                lines.add(tree.toString());
+            }
+        }
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        // write to a temporary file first, other processes might read the cache at the same time
+        Path tmp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        Files.write(tmp, lines, StandardCharsets.UTF_8);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
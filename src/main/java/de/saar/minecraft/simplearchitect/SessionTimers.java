@@ -0,0 +1,117 @@
+package de.saar.minecraft.simplearchitect;
+
+import org.tinylog.Logger;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The timed tasks of one game, e.g. reminders and timeout checks.
+ * They are all timed by the process-wide {@link ArchitectExecutors#scheduler()} instead of threads of their own,
+ * and {@link #cancelAll()} stops all of them at once when the game ends.
+ *
+ * <p>The scheduler only hands the tasks to {@link ArchitectExecutors#background()}: the tasks usually
+ * synchronize on their architect and may run the realizer, and the few scheduler threads also pace
+ * the messages of all games, so a slow task must never block them.
+ */
+public class SessionTimers {
+    private static final AtomicInteger numLiveTimers = new AtomicInteger(0);
+
+    private final Set<ScheduledFuture<?>> timers = new HashSet<>();
+    private boolean cancelled = false;
+
+    /**
+     * Runs {@code task} every {@code period} until {@link #cancelAll()} is called.
+     */
+    public synchronized void scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit) {
+        if (cancelled) {
+            return;
+        }
+        // skip a tick if the previous run is still waiting or running, instead of piling up runs
+        var running = new AtomicBoolean(false);
+        Runnable run = inBackground(() -> {
+            try {
+                task.run();
+            } finally {
+                running.set(false);
+            }
+        });
+        timers.add(ArchitectExecutors.scheduler().scheduleAtFixedRate(() -> {
+            if (running.compareAndSet(false, true)) {
+                run.run();
+            }
+        }, initialDelay, period, unit));
+        numLiveTimers.incrementAndGet();
+    }
+
+    /**
+     * Runs {@code task} once after {@code delay} unless {@link #cancelAll()} is called before.
+     */
+    public synchronized void schedule(Runnable task, long delay, TimeUnit unit) {
+        if (cancelled) {
+            return;
+        }
+        // the future is only known after scheduling, so the task looks it up through this holder.
+        var self = new ScheduledFuture<?>[1];
+        Runnable run = inBackground(task);
+        self[0] = ArchitectExecutors.scheduler().schedule(() -> {
+            synchronized (this) {
+                if (timers.remove(self[0])) {
+                    numLiveTimers.decrementAndGet();
+                }
+            }
+            run.run();
+        }, delay, unit);
+        timers.add(self[0]);
+        numLiveTimers.incrementAndGet();
+    }
+
+    /**
+     * Cancels all timers of this game; no timers can be added afterwards.
+     */
+    public synchronized void cancelAll() {
+        cancelled = true;
+        for (var timer : timers) {
+            timer.cancel(false);
+        }
+        numLiveTimers.addAndGet(-timers.size());
+        timers.clear();
+    }
+
+    /**
+     * Returns the number of timers of this game that have not run out or been cancelled.
+     */
+    public synchronized int size() {
+        return timers.size();
+    }
+
+    /**
+     * Returns the number of live timers of all games in this process.
+     */
+    public static int getNumLiveTimers() {
+        return numLiveTimers.get();
+    }
+
+    /**
+     * Returns a runnable that hands {@code task} to the background pool; the task is skipped if the timers
+     * were cancelled in the meantime.
+     */
+    private Runnable inBackground(Runnable task) {
+        return () -> ArchitectExecutors.background().execute(() -> {
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+            }
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                Logger.error("timer failed: {}", e);
+            }
+        });
+    }
+}
@@ -21,9 +21,15 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static java.lang.Math.abs;
@@ -63,96 +69,140 @@ public class SimpleArchitect extends AbstractArchitect {
     }
 
     private static final int RESEND_INTERVAL = 11000;
+    /** how often we check whether the current instruction needs to be resent. */
+    private static final int RESEND_CHECK_INTERVAL = 1000;
+    private static final int SECRET_WORD_INTERVAL = 30 * 1000;
     private static final int MESSAGE_PAUSE = 500;
+    /** pause between the welcome messages and the first instruction. */
+    private static final int WELCOME_PAUSE = 1000;
+    /** pause between the first instructions of a game. */
+    private static final int INITIAL_INSTRUCTION_PAUSE = 500;
+    /** pause between several instructions sent at once. */
+    private static final int INSTRUCTION_PAUSE = 100;
+    private static final int REALIZER_CACHE_SIZE = 100;
+    /** the part of the realizer budget kept for instructing a single block if an object takes too long. */
+    private static final double BLOCK_FALLBACK_SHARE = 0.25;
+    /** sent if no instruction could be generated. */
+    private static final String GENERIC_INSTRUCTION =
+            "I could not create an instruction for you, please do what you think is right";
 
     protected PlanCreator planCreator;
 
     protected HashSet<MinecraftObject> it = new HashSet<>();
     protected List<MinecraftObject> plan;
-    private Set<Block> currentInstructionBlocksLeft = Set.of();
+    private BlockIndex currentInstructionBlocksLeft = new BlockIndex();
     protected Set<MinecraftObject> world;
+    /**
+     * Changes whenever {@link #world} changes, see {@link ReferringExpressionCache.WorldVersion}.
+     * Only modify the world through {@link #addToWorld} and {@link #removeFromWorld} to keep this up to date.
+     */
+    protected ReferringExpressionCache.WorldVersion worldVersion = ReferringExpressionCache.WorldVersion.EMPTY;
+    /** changes to the world since it was last logged, only used with {@code worldLogMode: delta}. */
+    private final WorldDelta worldDelta = new WorldDelta();
+    /** the realizers for the weights of this game, see {@link RealizerPool}. */
+    protected RealizerPool realizers;
+    /** the private realizer of this game if its weights are randomized, otherwise null. */
     protected MinecraftRealizer realizer;
+    protected ReferringExpressionCache realizerCache;
     protected AtomicInteger numBlocksPlaced = new AtomicInteger(0);
     protected AtomicLong lastUpdate = new AtomicLong(0);
     protected InstructionTuple currentInstruction;
     protected Orientation lastOrientation = Orientation.XMINUS;
     protected String scenario;
     protected final CountDownLatch readyCounter = new CountDownLatch(1);
+    /** All messages to the player are sent through this, see {@link #queueMessage}. */
+    private final MessagePacer messagePacer = new MessagePacer(ArchitectExecutors.scheduler());
+    private final SessionTimers timers = new SessionTimers();
+    /** null if events are logged synchronously, see {@link #logEvent(Supplier, String)}. */
+    private final GameEventLog eventLog;
     private final CountDownLatch objectiveSet = new CountDownLatch(1);
     private long startTime;
-    private boolean SecretWordThreadStarted = false;
+    private boolean secretWordReminderStarted = false;
     private int numCorrectBlocks = 0;
     public WeightEstimator.WeightResult weights;
+    /**
+     * Trees for the current objective for every orientation the player might turn to,
+     * computed in the background.  Realizers are not thread-safe, so every use of a realizer
+     * goes through {@link #realizers} (see {@link ReferringExpressionCache}).
+     */
+    private final Map<Orientation, Future<Tree<String>>> precomputedTrees = new EnumMap<>(Orientation.class);
+    /** incremented whenever the precomputed trees are discarded, so that stale precomputations stop early. */
+    private final AtomicLong precomputationGeneration = new AtomicLong(0);
+    /**
+     * For the "adaptive" instruction level: the instruction level to use for every scenario.  With shared
+     * realizers, it is selected in the background as soon as the weights are known; with a private realizer,
+     * only for the scenario of the game once it is known.
+     */
+    final Map<String, Future<CostFunction.InstructionLevel>> adaptiveLevels = new HashMap<>();
+    /** the realization that exceeded its budget and whose result is sent once it is done, or null. */
+    private CompletableFuture<Tree<String>> lateRealization;
 
     protected final SimpleArchitectConfiguration config;
 
     /**
      * These are all blocks that exist in the world (except water block)
      */
-    protected Set<Block> alreadyPlacedBlocks = new HashSet<>();
+    protected BlockIndex alreadyPlacedBlocks = new BlockIndex();
     /**
      * These are blocks that were placed but we did not instruct them (yet)
      * They might be part of what we want to instruct later on though.
      */
-    protected Set<Block> incorrectlyPlacedBlocks = new HashSet<>();
+    protected BlockIndex incorrectlyPlacedBlocks = new BlockIndex();
 
     public SimpleArchitect(SimpleArchitectConfiguration config) {
+        this(config, null);
+    }
+
+    /**
+     * Creates an architect that takes its trained weights from {@code weightService} if it is not null
+     * and otherwise fits them from the database right away.
+     */
+    public SimpleArchitect(SimpleArchitectConfiguration config, WeightSnapshotService weightService) {
         this.config = config;
-        this.realizer = MinecraftRealizer.createRealizer();
+        if (config.getAsyncEventLog()) {
+            this.eventLog = new GameEventLog(
+                    (events) -> events.forEach((event) -> log(event.message(), event.type())),
+                    ArchitectExecutors.eventLogWriter(),
+                    config.getEventLogQueueSize(),
+                    GameEventLog.OverflowPolicy.valueOf(config.getEventLogOverflowPolicy()),
+                    Set.of(WorldLogReplay.FULL_WORLD, WorldLogReplay.WORLD_DELTA));
+        } else {
+            this.eventLog = null;
+        }
         List<List<Tree<String>>> seedGames = new ArrayList<>();
-        if (config.getAddSeedGames()) {
-            seedGames = this.generateSeedInstructionTrees();
+        if (config.getAddSeedGames() && weightService == null) {
+            seedGames = SeedGameCache.get();
         }
         switch (config.getWeightSource()) {
             case "random":
+                this.realizer = MinecraftRealizer.createRealizer();
                 this.realizer.randomizeExpectedDurations();
                 break;
             case "UCB":
-                weights = new WeightEstimator(config.getWeightTrainingDatabase(),
-                        config.getWeightTrainingDBUser(),
-                        config.getWeightTrainingDBPassword(),
-                        config.getTrainingSamplingLowerPercentile(),
-                        config.getTrainingSamplingUpperPercentile(),
-                        seedGames,
-                        config.getWeightTrainingArchitectName(),
-                        config.getDeletionsAsCosts())
+                weights = weightService != null ? weightService.getWeights()
+                        : WeightSnapshotService.createEstimator(config, seedGames)
                         .getUCBWithBootstrap(config.getTrainingNumBootstrapRuns(), true);
-                realizer.setExpectedDurations(weights.weights, false);
                 break;
             case "bootstrapped":
-                weights = new WeightEstimator(config.getWeightTrainingDatabase(),
-                        config.getWeightTrainingDBUser(),
-                        config.getWeightTrainingDBPassword(),
-                        config.getTrainingSamplingLowerPercentile(),
-                        config.getTrainingSamplingUpperPercentile(),
-                        seedGames,
-                        config.getWeightTrainingArchitectName(),
-                        config.getDeletionsAsCosts())
+                weights = weightService != null ? weightService.getWeights()
+                        : WeightSnapshotService.createEstimator(config, seedGames)
                         .sampleDurationCoeffsWithBootstrap(config.getTrainingNumBootstrapRuns(), true);
-                realizer.setExpectedDurations(weights.weights, false);
                 break;
             case "epsilongreedy":
                 if (random() > config.getEpsilonGreedyPercentage()) {
+                    this.realizer = MinecraftRealizer.createRealizer();
                     this.realizer.randomizeExpectedDurations();
                     break;
                 } // else: take optimal case below
             case "optimal":
-                weights = new WeightEstimator(config.getWeightTrainingDatabase(),
-                        config.getWeightTrainingDBUser(),
-                        config.getWeightTrainingDBPassword(),
-                        config.getTrainingSamplingLowerPercentile(),
-                        config.getTrainingSamplingUpperPercentile(),
-                        seedGames,
-                        config.getWeightTrainingArchitectName(),
-                        config.getDeletionsAsCosts())
+                weights = weightService != null ? weightService.getWeights()
+                        : WeightSnapshotService.createEstimator(config, seedGames)
                         .predictDurationCoeffsFromAllGames();
-                realizer.setExpectedDurations(weights.weights, false);
                 break;
             case "file":
                 try {
                     weights = WeightEstimator.WeightResult.fromJson(
                             Files.readString(Paths.get(config.getWeightFile())));
-                    realizer.setExpectedDurations(weights.weights, false);
                 } catch (IOException e) {
                     throw new RuntimeException("could not read weights file: " + config.getWeightFile());
                 }
@@ -162,22 +212,68 @@ public class SimpleArchitect extends AbstractArchitect {
                 throw new RuntimeException("unknown value \"" + config.getWeightSource() + "\" for weightSource. "
                         + "valid values: random, bootstrapped, optimal, default");
         }
+        if (config.getWeightSource().equals("UCB") || config.getWeightSource().equals("bootstrapped")) {
+            // sampled weights are drawn for this game only, sharing their realizers would not save anything
+            this.realizers = RealizerPool.ofPrivate(PlanCostEvaluator.createRealizer(weights), weights);
+        } else if (realizer != null) {
+            this.realizers = RealizerPool.ofPrivate(realizer);
+        } else {
+            // realizers with trained or default weights are shared with all other games using the same weights
+            this.realizers = RealizerPool.shared(weights);
+        }
+        this.realizerCache = new ReferringExpressionCache(realizers, REALIZER_CACHE_SIZE);
+        // the selection with shared realizers is shared by all architects with the same weights.  A private
+        // realizer would realize the plans of all scenarios for every architect (including the ones waiting
+        // in an ArchitectPool), so it only selects the level for the scenario of the game in initialize().
+        if (config.getInstructionlevel().equals("adaptive") && config.getPlanFile().isEmpty()
+                && !realizers.isPrivate()) {
+            for (String currScenario : List.of("house", "bridge")) {
+                adaptiveLevels.put(currScenario, selectAdaptiveLevel(currScenario));
+            }
+        }
+    }
+
+    /**
+     * Starts selecting the instruction level with the lowest cost for {@code scenario} under the weights of
+     * this architect.  Trained and default weights are shared between games, so the selection is shared as
+     * well (see {@link AdaptiveLevelSelector}); randomized and sampled weights only exist in this architect's
+     * private realizer.
+     */
+    private Future<CostFunction.InstructionLevel> selectAdaptiveLevel(String scenario) {
+        if (!realizers.isPrivate()) {
+            return AdaptiveLevelSelector.select(scenario, weights);
+        }
+        return CompletableFuture.supplyAsync(() -> CostFunction.InstructionLevel.valueOf(
+                        PlanCostEvaluator.getOptimalPlan(scenario, realizers).getInstructionLevel()),
+                ArchitectExecutors.background());
+    }
+
+    /**
+     * Returns the instruction level for {@code scenario} with the "adaptive" instruction level,
+     * waiting for the selection if it is not done yet.
+     */
+    protected CostFunction.InstructionLevel getAdaptiveInstructionLevel(String scenario) {
+        var level = adaptiveLevels.computeIfAbsent(scenario, this::selectAdaptiveLevel);
+        try {
+            return level.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted while selecting the instruction level", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("could not select the instruction level", e.getCause());
+        }
     }
 
     @Override
     public synchronized void playerReady() {
         startTime = java.lang.System.currentTimeMillis();
         Logger.debug("received playerReady");
-        sendMessage("Welcome! I will try to instruct you to build a " + scenario);
+        queueMessage("Welcome! I will try to instruct you to build a " + scenario);
         // these information will be given externally.
-        // sendMessage("you can move around with w,a,s,d and look around with your mouse.");
-        // sendMessage("Place blocks with the RIGHT mouse button, delete with LEFT mouse button.");
-        sendMessage("press spacebar twice to fly and shift to dive.");
-        sendMessage("If you place a block at the correct position, it will appear as stone bricks.");
-        try {
-            Thread.sleep(1000);
-        } catch (InterruptedException ignored) {
-        }
+        // queueMessage("you can move around with w,a,s,d and look around with your mouse.");
+        // queueMessage("Place blocks with the RIGHT mouse button, delete with LEFT mouse button.");
+        queueMessage("press spacebar twice to fly and shift to dive.");
+        queueMessage("If you place a block at the correct position, it will appear as stone bricks.");
         // This is the first time we can log something
         // log the complete plan and the current object.
         try {
@@ -190,15 +286,22 @@ public class SimpleArchitect extends AbstractArchitect {
                 .map(MinecraftObject::asJson)
                 .collect(Collectors.joining(",\n")) + "]";
         if (weights != null) {
-            log(weights.toJson(), "GrammarWeights");
+            logEvent(weights.toJson(), "GrammarWeights");
         } else {
-            log(realizer.getWeightsAsJson(), "GrammarWeights");
+            logEvent(realizers.withRealizer(MinecraftRealizer::getWeightsAsJson), "GrammarWeights");
+        }
+        logEvent(planString, "InitialPlan");
+        if (config.getWorldLogMode().equals("delta")) {
+            logWorld(true);
         }
-        log(planString, "InitialPlan");
         var instructions = computeNextInstructions();
         sendMessagesInitial(instructions, false);
         lastUpdate.set(java.lang.System.currentTimeMillis());
         objectiveSet.countDown();
+        timers.scheduleAtFixedRate(this::resendIfIdle, RESEND_INTERVAL, RESEND_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+        if (config.getShowSecret()) {
+            timers.schedule(this::checkTimeOut, config.getTimeoutMinutes(), TimeUnit.MINUTES);
+        }
     }
 
     private static InputStream getResourceStream(String resName) {
@@ -215,31 +318,68 @@ public class SimpleArchitect extends AbstractArchitect {
         scenario = message.getName();
         String instructionlevel = config.getInstructionlevel();
         if (!config.getPlanFile().isEmpty()) {
-            planCreator = new PlanCreatorFromFile(scenario,
-                    config.getPlanFile());
+            planCreator = PlanCache.getFromFile(scenario, config.getPlanFile());
         } else {
-            planCreator = new PlanCreator(scenario, CostFunction.InstructionLevel.valueOf(instructionlevel));
+            if (instructionlevel.equals("adaptive")) {
+                planCreator = PlanCache.get(scenario, getAdaptiveInstructionLevel(scenario));
+            } else {
+                planCreator = PlanCache.get(scenario, CostFunction.InstructionLevel.valueOf(instructionlevel));
+            }
         }
-        this.plan = planCreator.getPlan();
-        this.world = planCreator.getInitialWorld();
-        this.alreadyPlacedBlocks = planCreator.getBlocksCurrentWorld();
+        initializeFromPlan(planCreator);
         Logger.debug("initialization done");
         readyCounter.countDown();
     }
 
-    protected List<List<Tree<String>>> generateSeedInstructionTrees() {
-        List<List<Tree<String>>> result = new ArrayList<>();
-        for (String currScenario : List.of("house", "bridge")) {
-            for (var il : CostFunction.InstructionLevel.values()) {
-                Logger.debug("trying instruction level {}", il);
-                var planCreator = new PlanCreator(currScenario, il);
-                result.add(generateSeedInstructionTrees(planCreator));
-            }
+    /**
+     * Sets the plan, the world and everything derived from them to the initial state of {@code planCreator}.
+     */
+    protected void initializeFromPlan(PlanCreator planCreator) {
+        this.planCreator = planCreator;
+        this.plan = planCreator.getPlan();
+        this.world = planCreator.getInitialWorld();
+        this.worldVersion = ReferringExpressionCache.WorldVersion.EMPTY;
+        this.worldDelta.clear();
+        for (var object : world) {
+            worldVersion = worldVersion.add(object);
+        }
+        this.alreadyPlacedBlocks = planCreator.getBlockIndexCurrentWorld();
+    }
+
+    protected void addToWorld(MinecraftObject object) {
+        if (world.add(object)) {
+            worldVersion = worldVersion.add(object);
+            worldDelta.add(object);
+        }
+    }
+
+    protected void removeFromWorld(MinecraftObject object) {
+        if (world.remove(object)) {
+            worldVersion = worldVersion.remove(object);
+            worldDelta.remove(object);
         }
-        return result;
     }
 
-    protected List<Tree<String>> generateSeedInstructionTrees(PlanCreator planCreator) {
+    /**
+     * Logs the current world, either completely or (with {@code worldLogMode: delta}) only the changes
+     * since the last time it was logged.  The full world can be rebuilt with {@link WorldLogReplay}.
+     */
+    private void logWorld(boolean full) {
+        if (full || !config.getWorldLogMode().equals("delta")) {
+            var worldCopy = new ArrayList<>(world);
+            logEvent(() -> toJson(worldCopy), WorldLogReplay.FULL_WORLD);
+        } else {
+            logEvent(worldDelta.toJson(), WorldLogReplay.WORLD_DELTA);
+        }
+        worldDelta.clear();
+    }
+
+    /**
+     * Generates the instruction trees for the plan of {@code planCreator}, using {@code realizer}
+     * with its default weights.  See {@link SeedGameCache} for the trees of all plans.
+     */
+    protected static List<Tree<String>> generateSeedInstructionTrees(MinecraftRealizer realizer,
+                                                                     PlanCreator planCreator) {
         var result = new ArrayList<Tree<String>>();
         var tmpplan = planCreator.getPlan();
         var tmpworld = planCreator.getInitialWorld();
@@ -288,9 +428,9 @@ public class SimpleArchitect extends AbstractArchitect {
             int y = request.getY();
             int z = request.getZ();
             var blockPlaced = new Block(x, y, z);
-            world.add(blockPlaced);
+            addToWorld(blockPlaced);
             if (plan.isEmpty()) {
-                sendMessage("you are done, no more changes needed!");
+                queueMessage("you are done, no more changes needed!");
                 return;
             }
             /*
@@ -302,12 +442,12 @@ public class SimpleArchitect extends AbstractArchitect {
             // current object is complete
             // ID for Stone Bricks
             String correctBlockType = "STONE_BRICKS";
-            if (currentInstructionBlocksLeft.size() == 1 && currentInstructionBlocksLeft.contains(blockPlaced)) {
+            if (currentInstructionBlocksLeft.size() == 1 && currentInstructionBlocksLeft.contains(x, y, z)) {
                 numCorrectBlocks += 1;
-                world.add(plan.get(0));
-                alreadyPlacedBlocks.add(blockPlaced);
+                addToWorld(plan.get(0));
+                alreadyPlacedBlocks.add(x, y, z);
                 //send message to protect this block since it is correct and change type to ID stored in correctBlockType
-                sendControlMessage(blockPlaced.xpos, blockPlaced.ypos, blockPlaced.zpos, correctBlockType);
+                queueControlMessage(blockPlaced, correctBlockType);
                 // we can refer to the HLO and the block as it.
                 // remove all blocks because we add a new block
                 // remove all objects of the type we just finished because we add that one.
@@ -317,31 +457,31 @@ public class SimpleArchitect extends AbstractArchitect {
                 plan.remove(0);
                 updateInstructions();
                 if (plan.isEmpty()) {
-                    sendMessage("Congratulations, you are done building a " + scenario,
-                            NewGameState.SuccessfullyFinished);
+                    String message = "Congratulations, you are done building a " + scenario;
+                    messagePacer.send(() -> sendMessage(message, NewGameState.SuccessfullyFinished), 0);
                     checkTimeOut();
                 }
                 return;
             } // end current objective is complete
-            if (currentInstructionBlocksLeft.contains(blockPlaced)) {
+            if (currentInstructionBlocksLeft.contains(x, y, z)) {
                 // second case:
                 // correct block, but objective not complete
                 // Just note and do nothing for now
                 numCorrectBlocks += 1;
-                currentInstructionBlocksLeft.remove(blockPlaced);
-                alreadyPlacedBlocks.add(blockPlaced);
-                sendControlMessage(blockPlaced.xpos, blockPlaced.ypos, blockPlaced.zpos, correctBlockType);
+                currentInstructionBlocksLeft.remove(x, y, z);
+                alreadyPlacedBlocks.add(x, y, z);
+                queueControlMessage(blockPlaced, correctBlockType);
                 // We are in the middle of an ongoing instruction.
                 // Therefore, we still use the reference frame from the
                 // start of the interaction and do not update "it".
                 // it = Set.of(blockPlaced);
             } else {
                 // third case: incorrect block
-                incorrectlyPlacedBlocks.add(blockPlaced);
-                alreadyPlacedBlocks.add(blockPlaced);
+                incorrectlyPlacedBlocks.add(x, y, z);
+                alreadyPlacedBlocks.add(x, y, z);
                 lastUpdate.set(java.lang.System.currentTimeMillis());
                 sendMessageSpaces();
-                sendMessage("Not there! please remove that block again and " + currentInstruction.instruction);
+                queueMessage("Not there! please remove that block again and " + currentInstruction.instruction);
                 sendMessageSpaces();
                 it.removeIf((elem) -> elem instanceof Block);
                 it.add(blockPlaced);
@@ -353,12 +493,36 @@ public class SimpleArchitect extends AbstractArchitect {
         }
     }
 
+    /**
+     * Sends {@code message} to the player after all previously queued messages.
+     * This never blocks; the messages are sent from {@link ArchitectExecutors#scheduler()}.
+     */
+    private void queueMessage(String message) {
+        messagePacer.send(() -> sendMessage(message), 0);
+    }
+
+    /**
+     * Sends {@code instruction} to the player {@code pauseMillis} after the previous message
+     * and notes the time it was sent in {@link #lastUpdate}.
+     */
+    private void queueInstruction(InstructionTuple instruction, long pauseMillis) {
+        String json = instruction.toJson();
+        messagePacer.send(() -> {
+            lastUpdate.set(java.lang.System.currentTimeMillis());
+            sendMessage(json);
+        }, pauseMillis);
+    }
+
+    private void queueControlMessage(Block block, String blockType) {
+        messagePacer.send(() -> sendControlMessage(block.xpos, block.ypos, block.zpos, blockType), 0);
+    }
+
     private void sendMessageSpaces() {
-        sendMessage("|");
-        sendMessage("|");
-        sendMessage("|");
-        sendMessage("|");
-        sendMessage("|");
+        queueMessage("|");
+        queueMessage("|");
+        queueMessage("|");
+        queueMessage("|");
+        queueMessage("|");
     }
 
     private void sendMessagesInitial(List<InstructionTuple> responses, boolean sendGreat) {
@@ -370,14 +534,10 @@ public class SimpleArchitect extends AbstractArchitect {
                             response.tree,
                             response.isNewInstruction);
                 }
+                queueInstruction(response, WELCOME_PAUSE);
             } else {
-                try {
-                    Thread.sleep(500);
-                } catch (InterruptedException ignored) {
-                }
+                queueInstruction(response, INITIAL_INSTRUCTION_PAUSE);
             }
-            lastUpdate.set(java.lang.System.currentTimeMillis());
-            sendMessage(response.toJson());
             isFirst = false;
         }
     }
@@ -396,14 +556,10 @@ public class SimpleArchitect extends AbstractArchitect {
                             response.tree,
                             response.isNewInstruction);
                 }
+                queueInstruction(response, 0);
             } else {
-                try {
-                    Thread.sleep(100);
-                } catch (InterruptedException ignored) {
-                }
+                queueInstruction(response, INSTRUCTION_PAUSE);
             }
-            lastUpdate.set(java.lang.System.currentTimeMillis());
-            sendMessage(response.toJson());
             isFirst = false;
         }
         sendMessageSpaces();
@@ -436,7 +592,7 @@ public class SimpleArchitect extends AbstractArchitect {
         // iterate over all introduction messages we might need
         if (toInstruct instanceof IntroductionMessage obj) {
             plan.remove(0);
-            log(obj.asJson(), "CurrentObject");
+            logEvent(obj::asJson, "CurrentObject");
             //String message = generateResponse(world, obj.object, it, lastOrientation);
             if (obj.starting) {
                 var result = computeNextInstructions();
@@ -445,7 +601,7 @@ public class SimpleArchitect extends AbstractArchitect {
                 }
                 return result;
             } else {
-                world.add(obj.object);
+                addToWorld(obj.object);
                 it.removeIf((elem) -> obj.object.getClass().equals(elem.getClass()));
                 it.add(obj.object);
                 var result = new ArrayList<InstructionTuple>();
@@ -455,22 +611,22 @@ public class SimpleArchitect extends AbstractArchitect {
             }
         }
         // Other case: not an introduction
-        log(toJson(world),
-                "CurrentWorld");
-        log(toInstruct.asJson(), "CurrentObject");
-        log(toJson(it), "it");
-        currentInstructionBlocksLeft = toInstruct.getBlocks();
+        logWorld(false);
+        logEvent(toInstruct::asJson, "CurrentObject");
+        var itCopy = new ArrayList<>(it);
+        logEvent(() -> toJson(itCopy), "it");
+        currentInstructionBlocksLeft = BlockIndex.of(toInstruct.getBlocks());
         // All blocks that were incorrectly placed before
         // and are part ot the thing we want to instruct are now not
         // incorrect anymore.  Otherwise, removing such a block
         // later on would not be seen as incorrect.
         incorrectlyPlacedBlocks.removeAll(currentInstructionBlocksLeft);
         currentInstructionBlocksLeft.removeAll(alreadyPlacedBlocks);
-        String currentObjectsLeft = currentInstructionBlocksLeft.
+        var blocksLeft = new BlockIndex(currentInstructionBlocksLeft);
+        logEvent(() -> blocksLeft.toBlocks().
                 stream().
                 map(MinecraftObject::asJson)
-                .collect(Collectors.joining(",\n"));
-        log(currentObjectsLeft, "BlocksCurrentObjectLeft");
+                .collect(Collectors.joining(",\n")), "BlocksCurrentObjectLeft");
         if (currentInstructionBlocksLeft.isEmpty()) {
             // can happen e.g. if we want to instruct to place a block
             // that was incorrectly placed before already
@@ -478,23 +634,31 @@ public class SimpleArchitect extends AbstractArchitect {
             return computeNextInstructions();
         }
         var t = System.currentTimeMillis();
-        Set<MinecraftObject> worldLocal = world;
-        worldLocal.addAll(toInstruct.getBlocks());
-        var currentTree = realizer.generateReferringExpressionTree(worldLocal, toInstruct, it, lastOrientation);
+        toInstruct.getBlocks().forEach(this::addToWorld);
+        var realization = realizeWithinBudget(toInstruct, lastOrientation, objectBudget(toInstruct));
+        if (realization.budgetExceeded()) {
+            var result = new ArrayList<InstructionTuple>();
+            result.add(instructBudgetFallback(toInstruct, realization));
+            return result;
+        }
+        var currentTree = realization.tree();
 
         if (currentTree == null) {
+            cancelPrecomputation();
             // We somehow fail.
             // log the problem and hide from the user.
             logInstructionGenerationFailure();
             var result = new ArrayList<InstructionTuple>();
-            currentInstruction = new InstructionTuple("I could not create an instruction for you, please do what you think is right", null, true);
+            currentInstruction = new InstructionTuple(GENERIC_INSTRUCTION, null, true);
             result.add(currentInstruction);
             return result;
         }
 
-        log(String.valueOf(System.currentTimeMillis() - t), "RealizerTiming");
+        logEvent(String.valueOf(System.currentTimeMillis() - t), "RealizerTiming");
+        logEvent(realizerCache.statsAsJson(), "RealizerCacheStats");
+        precomputeOrientations(toInstruct, currentTree);
         currentInstruction = new InstructionTuple(
-                toInstruct.getVerb() + " " + realizer.treeToReferringExpression(currentTree),
+                toInstruct.getVerb() + " " + treeToReferringExpression(currentTree),
                 currentTree,
                 true
         );
@@ -505,32 +669,263 @@ public class SimpleArchitect extends AbstractArchitect {
     }
 
     /**
-     * Checks whether the secret word for payment should be shown and if so starts a thread for that.
+     * The result of {@link #realizeWithinBudget}.
+     * @param tree the tree, null if the realizer failed or the budget was exceeded.
+     * @param late if the budget was exceeded, the computation that is still running, otherwise null.
+     */
+    private record Realization(Tree<String> tree, CompletableFuture<Tree<String>> late, long startMillis) {
+        boolean budgetExceeded() {
+            return late != null;
+        }
+    }
+
+    /**
+     * Generates the tree for {@code target} like {@link ReferringExpressionCache#generateReferringExpressionTree},
+     * but waits at most {@code realizerBudgetMillis} (if set) for the realizer.  The realizer keeps running
+     * in the background if the budget is exceeded.
+     */
+    private Realization realizeWithinBudget(MinecraftObject target, Orientation orientation) {
+        return realizeWithinBudget(target, orientation, config.getRealizerBudgetMillis());
+    }
+
+    /**
+     * Same as {@link #realizeWithinBudget(MinecraftObject, Orientation)}, but waits at most {@code budget}
+     * milliseconds (no limit if it is not positive).
+     */
+    private Realization realizeWithinBudget(MinecraftObject target, Orientation orientation, long budget) {
+        long start = System.currentTimeMillis();
+        if (budget <= 0) {
+            return new Realization(realizerCache.generateReferringExpressionTree(worldVersion, world,
+                    target, it, orientation), null, start);
+        }
+        // the world and "it" change while the computation might still run
+        Set<MinecraftObject> worldCopy = new HashSet<>(world);
+        Set<MinecraftObject> itCopy = new HashSet<>(it);
+        var version = worldVersion;
+        // cancellable, so that realizations that are not needed anymore do not keep a background thread
+        var future = ArchitectExecutors.supplyCancellable(() ->
+                realizerCache.generateReferringExpressionTree(version, worldCopy, target, itCopy, orientation),
+                ArchitectExecutors.background());
+        try {
+            return new Realization(future.get(budget, TimeUnit.MILLISECONDS), null, start);
+        } catch (TimeoutException e) {
+            return new Realization(null, future, start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Realization(null, null, start);
+        } catch (ExecutionException e) {
+            Logger.warn("realizer failed: {}", e.getCause());
+            return new Realization(null, null, start);
+        }
+    }
+
+    /**
+     * Returns how long to wait for the tree of {@code target}: for objects other than blocks, a part of
+     * the budget is kept for {@link #instructBudgetFallback} if it can realize a block.
+     */
+    private long objectBudget(MinecraftObject target) {
+        long budget = config.getRealizerBudgetMillis();
+        if (budget <= 0 || target instanceof Block || !canRealizeFallbackBlock()) {
+            return budget;
+        }
+        return Math.max(1, budget - Math.round(budget * BLOCK_FALLBACK_SHARE));
+    }
+
+    /**
+     * Instructs a single block of {@code target} because the realizer exceeded its budget for {@code target}
+     * (or sends the generic message if the block does not fit into what is left of the budget,
+     * or if there is no realizer for it, see {@link #canRealizeFallbackBlock}).
+     * The instruction for {@code target} is sent once the realizer is done, see {@link #sendLateInstruction}.
+     */
+    private InstructionTuple instructBudgetFallback(MinecraftObject target, Realization realization) {
+        cancelPrecomputation();
+        InstructionTuple fallback = null;
+        if (!(target instanceof Block) && canRealizeFallbackBlock()) {
+            // lowest block first, the player can always place it
+            var block = currentInstructionBlocksLeft.toBlocks().stream()
+                    .min(Comparator.comparingInt((Block b) -> b.ypos)
+                            .thenComparingInt((b) -> b.xpos)
+                            .thenComparingInt((b) -> b.zpos))
+                    .orElse(null);
+            // the block only gets what is left of the budget, so that the instruction as a whole
+            // never takes much longer than the budget
+            long remaining = realization.startMillis() + config.getRealizerBudgetMillis()
+                    - System.currentTimeMillis();
+            var blockRealization = block == null || remaining <= 0 ? null
+                    : realizeWithinBudget(block, lastOrientation, remaining);
+            if (blockRealization != null && blockRealization.budgetExceeded()) {
+                blockRealization.late().cancel(false);
+            }
+            var blockTree = blockRealization == null ? null : blockRealization.tree();
+            if (blockTree != null) {
+                fallback = new InstructionTuple(block.getVerb() + " " + treeToReferringExpression(blockTree),
+                        blockTree, true);
+            }
+        }
+        logBudgetExceeded(target, realization, fallback == null ? "generic" : "block");
+        if (fallback == null) {
+            fallback = new InstructionTuple(GENERIC_INSTRUCTION, null, true);
+        }
+        currentInstruction = fallback;
+        awaitLateInstruction(target, realization);
+        return fallback;
+    }
+
+    /**
+     * Whether a single block can be realized while the realization of an object that exceeded its budget
+     * is still running.  A private pool only has one realizer, which that realization holds.
+     */
+    boolean canRealizeFallbackBlock() {
+        return !realizers.isPrivate();
+    }
+
+    private void logBudgetExceeded(MinecraftObject target, Realization realization, String fallback) {
+        long elapsed = System.currentTimeMillis() - realization.startMillis();
+        logEvent("{\"budgetMillis\": " + config.getRealizerBudgetMillis()
+                        + ", \"elapsedMillis\": " + elapsed
+                        + ", \"target\": " + target.asJson()
+                        + ", \"orientation\": \"" + lastOrientation + "\""
+                        + ", \"fallback\": \"" + fallback + "\"}"
+                , "RealizerBudgetExceeded");
+    }
+
+    /**
+     * Sends the result of {@code realization} once it is done, see {@link #sendLateInstruction}.
+     * Only the latest late realization is sent.
+     */
+    private void awaitLateInstruction(MinecraftObject target, Realization realization) {
+        if (lateRealization != null) {
+            lateRealization.cancel(false);
+        }
+        lateRealization = realization.late();
+        var replaced = currentInstruction;
+        var orientation = lastOrientation;
+        // async: the callback must never run on the current thread, before the caller is done
+        lateRealization.thenAcceptAsync((tree) -> sendLateInstruction(target, replaced, orientation,
+                realization.startMillis(), tree), ArchitectExecutors.background());
+    }
+
+    /**
+     * Sends the instruction for {@code tree}, which was generated for {@code target} after the budget was
+     * exceeded, if the player still has to build {@code target}, still looks in the same direction
+     * and {@code replaced} is still the current instruction.
+     */
+    private synchronized void sendLateInstruction(MinecraftObject target, InstructionTuple replaced,
+                                                  Orientation orientation, long startMillis, Tree<String> tree) {
+        logEvent(String.valueOf(System.currentTimeMillis() - startMillis), "RealizerTiming");
+        if (tree == null || plan.isEmpty() || plan.get(0) != target
+                || currentInstruction != replaced || lastOrientation != orientation) {
+            return;
+        }
+        currentInstruction = new InstructionTuple(target.getVerb() + " " + treeToReferringExpression(tree),
+                tree, false);
+        precomputeOrientations(target, tree);
+        lastUpdate.set(java.lang.System.currentTimeMillis());
+        sendMessageSpaces();
+        queueInstruction(currentInstruction, 0);
+        sendMessageSpaces();
+    }
+
+    /**
+     * Starts computing the trees for {@code target} for all orientations other than the current one
+     * in the background, so that turning around does not need to run the realizer.
+     * The world and "it" are copied because they change while the computation runs.
+     *
+     * <p>The orientations are computed one after another by a single task, so a game only uses one realizer
+     * for precomputing, and a precomputation that became stale (see {@link #cancelPrecomputation})
+     * stops before the next orientation instead of competing with the handlers for realizers.
+     */
+    private void precomputeOrientations(MinecraftObject target, Tree<String> currentTree) {
+        cancelPrecomputation();
+        Set<MinecraftObject> worldCopy = new HashSet<>(world);
+        Set<MinecraftObject> itCopy = new HashSet<>(it);
+        var version = worldVersion;
+        long generation = precomputationGeneration.get();
+        Map<Orientation, CompletableFuture<Tree<String>>> pending = new EnumMap<>(Orientation.class);
+        for (var orientation : Orientation.values()) {
+            if (orientation == lastOrientation) {
+                precomputedTrees.put(orientation, CompletableFuture.completedFuture(currentTree));
+                continue;
+            }
+            var future = new CompletableFuture<Tree<String>>();
+            precomputedTrees.put(orientation, future);
+            pending.put(orientation, future);
+        }
+        ArchitectExecutors.background().execute(() -> {
+            for (var entry : pending.entrySet()) {
+                if (precomputationGeneration.get() != generation) {
+                    // the objective or the world changed, the futures were cancelled already
+                    return;
+                }
+                try {
+                    entry.getValue().complete(realizerCache.generateReferringExpressionTree(
+                            version, worldCopy, target, itCopy, entry.getKey()));
+                } catch (RuntimeException e) {
+                    entry.getValue().completeExceptionally(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Discards all precomputed trees, e.g. because the objective or the world changed.
+     */
+    private void cancelPrecomputation() {
+        precomputationGeneration.incrementAndGet();
+        precomputedTrees.values().forEach((future) -> future.cancel(false));
+        precomputedTrees.clear();
+    }
+
+    private String treeToReferringExpression(Tree<String> tree) {
+        return realizers.withRealizer((realizer) -> realizer.treeToReferringExpression(tree));
+    }
+
+    /**
+     * Returns the result of a finished precomputation or null if it failed.
+     */
+    private static Tree<String> getPrecomputedTree(Future<Tree<String>> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException | ExecutionException e) {
+            Logger.warn("precomputing instruction failed: {}", e);
+            return null;
+        }
+    }
+
+    /**
+     * Checks whether the secret word for payment should be shown and if so starts a reminder for that.
+     * This is checked after every block and once the timeout is reached.
      */
     private synchronized void checkTimeOut() {
-        if (SecretWordThreadStarted || !config.getShowSecret()) {
+        if (secretWordReminderStarted || !config.getShowSecret()) {
             return;
         }
         boolean timePassed = System.currentTimeMillis() - startTime >= (long) config.getTimeoutMinutes() * 60 * 1000;
         if (plan.isEmpty() || (numCorrectBlocks >= config.getTimeoutMinBlocks() && timePassed)) {
-            SecretWordThreadStarted = true;
-            new Thread(() -> {
-                while (true) {
-                    Logger.info("timeout reached: {} start: {}", System.currentTimeMillis(),  startTime);
-                    if (this.playerHasLeft) {
-                        // no player anymore, stop trying to send messages to them
-                        break;
-                    }
-                    sendMessage("Thank you for participating in our experiment. The secret word is: "
-                            + config.getSecretWord());
-                    try {
-                        Thread.sleep(30 * 1000);
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                }
-            }).start();
+            secretWordReminderStarted = true;
+            // the reminder is cancelled in playerLeft()
+            timers.scheduleAtFixedRate(() -> {
+                Logger.info("timeout reached: {} start: {}", System.currentTimeMillis(), startTime);
+                queueMessage("Thank you for participating in our experiment. The secret word is: "
+                        + config.getSecretWord());
+            }, 0, SECRET_WORD_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Sends the current instruction again if nothing was sent for {@link #RESEND_INTERVAL}.
+     */
+    private synchronized void resendIfIdle() {
+        if (plan.isEmpty() || currentInstruction == null
+                || lastUpdate.get() + RESEND_INTERVAL > java.lang.System.currentTimeMillis()) {
+            return;
         }
+        // we still send the instruction, but mark that this is now a repetition.
+        currentInstruction.isNewInstruction = false;
+        lastUpdate.set(java.lang.System.currentTimeMillis());
+        sendMessageSpaces();
+        queueInstruction(currentInstruction, 0);
+        sendMessageSpaces();
     }
 
     @Override
@@ -539,12 +934,14 @@ public class SimpleArchitect extends AbstractArchitect {
         int y = request.getY();
         int z = request.getZ();
         var block = new Block(x, y, z);
-        world.remove(block);
+        removeFromWorld(block);
+        // the precomputed orientations were computed for the world with this block.
+        cancelPrecomputation();
         // We instructed the user to remove the block,
         // so simply remove it from our list.
-        if (incorrectlyPlacedBlocks.contains(block)) {
+        if (incorrectlyPlacedBlocks.contains(x, y, z)) {
             it.removeIf((elem) -> elem instanceof Block);
-            alreadyPlacedBlocks.remove(block);
+            alreadyPlacedBlocks.remove(x, y, z);
             // We are in this situation: We gave an instruction to the user,
             // the user placed a block incorrectly, now corrected that error.
             // Therefore, computing the next instructions should give us exactly
@@ -556,7 +953,7 @@ public class SimpleArchitect extends AbstractArchitect {
                 return;
             }
             if (newInstructions.size() > 1) {
-                log("got " + newInstructions.size() + " instructions", "handleBlocksDestroyed");
+                logEvent("got " + newInstructions.size() + " instructions", "handleBlocksDestroyed");
                 logInstructionGenerationFailure();
                 return;
             }
@@ -574,10 +971,10 @@ public class SimpleArchitect extends AbstractArchitect {
         // If a block that should be placed is removed again, re-add it to the plan
         // and instruct the user to place this block again
         //should never happen with block protection
-        if (alreadyPlacedBlocks.contains(block)) {
+        if (alreadyPlacedBlocks.contains(x, y, z)) {
             // We cannot say "previous block" when the last action was a removal
             it.removeIf((elem) -> elem instanceof Block);
-            world.add(block);
+            addToWorld(block);
             //need to rmeove this with block protection, otherwise strange race conditions can appear
             //that suggest that no block is there in our system while a protected block is present
             /*alreadyPlacedBlocks.remove(block);
@@ -631,49 +1028,86 @@ public class SimpleArchitect extends AbstractArchitect {
             }
 
             boolean orientationStayed = newOrientation == lastOrientation;
+            var precomputed = precomputedTrees.get(newOrientation);
+            if (!orientationStayed && precomputed != null && !precomputed.isDone()) {
+                // The instruction for the new orientation is still being computed,
+                // we will try again with the next status message.
+                return;
+            }
             lastOrientation = newOrientation;
 
-            // only re-send the current instruction after five seconds.
-            if (orientationStayed && lastUpdate.get() + RESEND_INTERVAL > java.lang.System.currentTimeMillis()) {
+            // If the orientation stayed, the instruction is re-sent by resendIfIdle().
+            if (orientationStayed) {
                 return;
             }
-            if (orientationStayed) {
-                // we still send the instruction, but mark that this is now a repetition.
-                currentInstruction.isNewInstruction = false;
+            logEvent(newOrientation.toString(), "NewOrientation");
+            Tree<String> newInstruction;
+            if (precomputed != null) {
+                newInstruction = getPrecomputedTree(precomputed);
             } else {
-                log(newOrientation.toString(), "NewOrientation");
                 var t = System.currentTimeMillis();
-                var newInstruction = realizer.generateReferringExpressionTree(world, plan.get(0), it, lastOrientation);
-                log(String.valueOf(System.currentTimeMillis() - t), "RealizerTiming");
-                if (currentInstruction.tree.equals(newInstruction)
-                        && lastUpdate.get() + RESEND_INTERVAL > java.lang.System.currentTimeMillis()) {
-                    // we turned but five seconds are not over and the turning did not
-                    // change the instruction, so no need to send again.
-                    return;
-                }
-                if (newInstruction != null) {
-                    String instrStr = plan.get(0).getVerb() + " " + realizer.treeToReferringExpression(newInstruction);
-                    currentInstruction = new InstructionTuple(instrStr, newInstruction, false);
-                } else {
-                    // We still want to say the same thing but somehow fail.
-                    // log the problem and hide from the user.
-                    logInstructionGenerationFailure();
+                var realization = realizeWithinBudget(plan.get(0), lastOrientation);
+                if (realization.budgetExceeded()) {
+                    // keep the current instruction, it is for the same object, until the realizer is done
+                    logBudgetExceeded(plan.get(0), realization, "current");
+                    awaitLateInstruction(plan.get(0), realization);
                     return;
                 }
+                newInstruction = realization.tree();
+                logEvent(String.valueOf(System.currentTimeMillis() - t), "RealizerTiming");
+                logEvent(realizerCache.statsAsJson(), "RealizerCacheStats");
+            }
+            if (Objects.equals(currentInstruction.tree, newInstruction)
+                    && lastUpdate.get() + RESEND_INTERVAL > java.lang.System.currentTimeMillis()) {
+                // we turned but five seconds are not over and the turning did not
+                // change the instruction, so no need to send again.
+                return;
+            }
+            if (newInstruction != null) {
+                String instrStr = plan.get(0).getVerb() + " " + treeToReferringExpression(newInstruction);
+                currentInstruction = new InstructionTuple(instrStr, newInstruction, false);
+            } else {
+                // We still want to say the same thing but somehow fail.
+                // log the problem and hide from the user.
+                logInstructionGenerationFailure();
+                return;
             }
             lastUpdate.set(java.lang.System.currentTimeMillis());
             sendMessageSpaces();
-            sendMessage(currentInstruction.toJson());
+            queueInstruction(currentInstruction, 0);
             sendMessageSpaces();
         }
     }
 
+    /**
+     * Logs a game event, in the background if {@code asyncEventLog} is set.
+     * {@code message} is called later in that case, so it must not depend on state that changes.
+     */
+    private void logEvent(Supplier<String> message, String type) {
+        if (eventLog != null) {
+            eventLog.log(message, type);
+        } else {
+            log(message.get(), type);
+        }
+    }
+
+    private void logEvent(String message, String type) {
+        logEvent(() -> message, type);
+    }
+
+    /**
+     * Returns the background log of this game or null if events are logged synchronously.
+     */
+    public GameEventLog getEventLog() {
+        return eventLog;
+    }
+
     /**
      * logs the current world state as NLGFailure.
      */
     private void logInstructionGenerationFailure() {
         Logger.warn("Failed to build instruction");
-        log("{\"world\":" + toJson(world)
+        logEvent("{\"world\":" + toJson(world)
                         + ", \"target\": " + plan.get(0).asJson()
                         + ", \"it\": " + toJson(it)
                         + ", \"orientation\": \"" + lastOrientation + "\""
@@ -681,8 +1115,17 @@ public class SimpleArchitect extends AbstractArchitect {
     }
 
     @Override
-    protected void playerLeft() {
-        // AFAIK, there is no cleanup we need to do.
+    protected synchronized void playerLeft() {
+        timers.cancelAll();
+        cancelPrecomputation();
+        if (lateRealization != null) {
+            lateRealization.cancel(false);
+        }
+        messagePacer.close();
+        Logger.debug("player left, {} timers live in total", SessionTimers.getNumLiveTimers());
+        if (eventLog != null) {
+            Logger.debug("event log: {} queued, {} dropped", eventLog.getQueueDepth(), eventLog.getNumDropped());
+        }
     }
 
     protected static String toJson(Collection<MinecraftObject> c) {
@@ -693,8 +1136,8 @@ public class SimpleArchitect extends AbstractArchitect {
                 + "]";
     }
 
-    public MinecraftRealizer getRealizer() {
-        return realizer;
+    public RealizerPool getRealizers() {
+        return realizers;
     }
 
     @Override
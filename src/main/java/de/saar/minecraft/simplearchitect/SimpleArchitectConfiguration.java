@@ -27,8 +27,35 @@ public class SimpleArchitectConfiguration {
     private int trainingSamplingLowerPercentile = 25;
     private int trainingSamplingUpperPercentile = 75;
     private int trainingNumBootstrapRuns = 1000;
+    /** If positive, weights are refitted in the background every that many minutes instead of for every game. */
+    private int weightRefreshMinutes = 0;
+    /** Number of pre-sampled weights kept ready for the bootstrapped and UCB weight sources. */
+    private int weightSamplePoolSize = 10;
+    /** directory with plans compiled by {@link PlanArtifact}; empty to always run JSHOP. */
+    private String planArtifactDirectory = "";
+    /** file in which plan costs are stored across runs, see {@link PlanCostCache}; empty to keep them in memory. */
+    private String planCostCacheFile = "";
+    /** minimal number of architects kept ready for new games, see {@link ArchitectPool}; 0 disables the pool. */
+    private int architectPoolSize = 0;
+    /** maximal number of architects kept ready when many games arrive. */
+    private int architectPoolMaxSize = 8;
+    /** maximal number of realizers shared by games with the same weights, see {@link RealizerPool}; 0 for the number of processors. */
+    private int maxRealizersPerPool = 0;
+    /** longest time (ms) to wait for the realizer before falling back to a simpler instruction; 0 waits forever. */
+    private int realizerBudgetMillis = 0;
     private String instructionlevel = "BLOCK";
     private boolean addSeedGames = false;
+    /** where the seed games are cached, see {@link SeedGameCache}; empty for the temporary directory. */
+    private String seedGameCacheDirectory = "";
+    /** "full" logs the complete world for every instruction, "delta" only once and then the changes. */
+    private String worldLogMode = "full";
+    /** Log game events in the background instead of while handling messages. */
+    private boolean asyncEventLog = false;
+    private int eventLogQueueSize = 10000;
+    /** What to do if the event log queue is full: BLOCK, DROP_NEWEST or DROP_OLDEST (world events always wait). */
+    private String eventLogOverflowPolicy = "DROP_OLDEST";
+    /** Run the shared thread pools of the architects on virtual threads (needs Java 21 at runtime). */
+    private boolean useVirtualThreads = false;
     /** If set, overrides the plan created by the planner.*/
     private String planFile = "";
 
@@ -113,6 +140,70 @@ public class SimpleArchitectConfiguration {
         this.trainingNumBootstrapRuns = trainingNumBootstrapRuns;
     }
 
+    public int getWeightRefreshMinutes() {
+        return weightRefreshMinutes;
+    }
+
+    public void setWeightRefreshMinutes(int weightRefreshMinutes) {
+        this.weightRefreshMinutes = weightRefreshMinutes;
+    }
+
+    public int getWeightSamplePoolSize() {
+        return weightSamplePoolSize;
+    }
+
+    public void setWeightSamplePoolSize(int weightSamplePoolSize) {
+        this.weightSamplePoolSize = weightSamplePoolSize;
+    }
+
+    public String getPlanArtifactDirectory() {
+        return planArtifactDirectory;
+    }
+
+    public void setPlanArtifactDirectory(String planArtifactDirectory) {
+        this.planArtifactDirectory = planArtifactDirectory;
+    }
+
+    public String getPlanCostCacheFile() {
+        return planCostCacheFile;
+    }
+
+    public void setPlanCostCacheFile(String planCostCacheFile) {
+        this.planCostCacheFile = planCostCacheFile;
+    }
+
+    public int getArchitectPoolSize() {
+        return architectPoolSize;
+    }
+
+    public void setArchitectPoolSize(int architectPoolSize) {
+        this.architectPoolSize = architectPoolSize;
+    }
+
+    public int getArchitectPoolMaxSize() {
+        return architectPoolMaxSize;
+    }
+
+    public void setArchitectPoolMaxSize(int architectPoolMaxSize) {
+        this.architectPoolMaxSize = architectPoolMaxSize;
+    }
+
+    public int getMaxRealizersPerPool() {
+        return maxRealizersPerPool;
+    }
+
+    public void setMaxRealizersPerPool(int maxRealizersPerPool) {
+        this.maxRealizersPerPool = maxRealizersPerPool;
+    }
+
+    public int getRealizerBudgetMillis() {
+        return realizerBudgetMillis;
+    }
+
+    public void setRealizerBudgetMillis(int realizerBudgetMillis) {
+        this.realizerBudgetMillis = realizerBudgetMillis;
+    }
+
     public String getWeightSource() {
         return weightSource;
     }
@@ -140,6 +231,14 @@ public class SimpleArchitectConfiguration {
         this.name = name;
     }
 
+    public String getSeedGameCacheDirectory() {
+        return seedGameCacheDirectory;
+    }
+
+    public void setSeedGameCacheDirectory(String seedGameCacheDirectory) {
+        this.seedGameCacheDirectory = seedGameCacheDirectory;
+    }
+
     public boolean getAddSeedGames() {
         return addSeedGames;
     }
@@ -149,6 +248,46 @@ public class SimpleArchitectConfiguration {
     }
 
 
+    public String getWorldLogMode() {
+        return worldLogMode;
+    }
+
+    public void setWorldLogMode(String worldLogMode) {
+        this.worldLogMode = worldLogMode;
+    }
+
+    public boolean getAsyncEventLog() {
+        return asyncEventLog;
+    }
+
+    public void setAsyncEventLog(boolean asyncEventLog) {
+        this.asyncEventLog = asyncEventLog;
+    }
+
+    public int getEventLogQueueSize() {
+        return eventLogQueueSize;
+    }
+
+    public void setEventLogQueueSize(int eventLogQueueSize) {
+        this.eventLogQueueSize = eventLogQueueSize;
+    }
+
+    public String getEventLogOverflowPolicy() {
+        return eventLogOverflowPolicy;
+    }
+
+    public void setEventLogOverflowPolicy(String eventLogOverflowPolicy) {
+        this.eventLogOverflowPolicy = eventLogOverflowPolicy;
+    }
+
+    public boolean getUseVirtualThreads() {
+        return useVirtualThreads;
+    }
+
+    public void setUseVirtualThreads(boolean useVirtualThreads) {
+        this.useVirtualThreads = useVirtualThreads;
+    }
+
     public double getEpsilonGreedyPercentage() {
         return epsilonGreedyPercentage;
     }
@@ -0,0 +1,209 @@
+package de.saar.minecraft.simplearchitect;
+
+import de.saar.minecraft.analysis.WeightEstimator;
+import de.up.ling.tree.Tree;
+import org.tinylog.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Fits the grammar weights in the background instead of once per game.
+ *
+ * <p>Every {@code weightRefreshMinutes}, a new {@link WeightEstimator} is created (i.e. the games in the
+ * database are read again) and the weights are refitted.  For the "optimal" and "epsilongreedy" weight
+ * sources, all architects share the latest fit.  For "bootstrapped" and "UCB", each game needs its own
+ * independent draw, so we keep a pool of {@code weightSamplePoolSize} pre-sampled weights that is refilled
+ * in the background whenever an architect takes one.
+ *
+ * <p>The estimator is only ever used from the single background thread.
+ */
+public class WeightSnapshotService {
+    private final SimpleArchitectConfiguration config;
+    private final ScheduledExecutorService executor;
+    private final AtomicReference<WeightEstimator.WeightResult> latest = new AtomicReference<>();
+    private final AtomicReference<BlockingQueue<WeightEstimator.WeightResult>> pool =
+            new AtomicReference<>(new LinkedBlockingQueue<>());
+    /** incremented after every successful refit */
+    private final AtomicLong version = new AtomicLong(0);
+    private List<List<Tree<String>>> seedGames;
+    private WeightEstimator estimator;
+    /** why the last refit failed, or null if it succeeded */
+    private RuntimeException lastFailure;
+
+    public WeightSnapshotService(SimpleArchitectConfiguration config) {
+        this.config = config;
+        this.executor = Executors.newSingleThreadScheduledExecutor((r) -> {
+            var thread = new Thread(r, "weight-snapshots");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Returns whether weights from {@code weightSource} are fitted from the database and can therefore
+     * be served by this service.
+     */
+    public static boolean supports(String weightSource) {
+        return List.of("optimal", "epsilongreedy", "bootstrapped", "UCB").contains(weightSource);
+    }
+
+    /**
+     * Starts refitting: once immediately and then every {@code weightRefreshMinutes}.
+     */
+    public void start() {
+        executor.scheduleWithFixedDelay(this::refresh, 0, config.getWeightRefreshMinutes(), TimeUnit.MINUTES);
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Returns weights for a new game.  The result belongs to the caller and can be modified freely.
+     * If no weights have been fitted yet, this blocks until they are, and throws a RuntimeException
+     * if they cannot be fitted.
+     */
+    public WeightEstimator.WeightResult getWeights() {
+        if (isSampled()) {
+            var result = pool.get().poll();
+            if (result == null) {
+                Logger.warn("weight pool is empty, sampling weights for this game now");
+                result = runOnExecutor(() -> {
+                    if (estimator == null) {
+                        createEstimator();
+                    }
+                    return sample();
+                });
+            }
+            executor.execute(this::refill);
+            return result;
+        }
+        var result = latest.get();
+        if (result == null) {
+            result = runOnExecutor(() -> {
+                if (latest.get() == null) {
+                    refresh();
+                }
+                if (latest.get() == null) {
+                    throw new RuntimeException("no weights have been fitted yet", lastFailure);
+                }
+                return latest.get();
+            });
+        }
+        // architects may modify their weights, so everybody gets a copy.
+        return WeightEstimator.WeightResult.fromJson(result.toJson());
+    }
+
+    /**
+     * Returns the version of the weights handed out right now; it increases with every refit.
+     * Weights taken at an older version are stale, see {@link ArchitectPool}.
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Returns the number of pre-sampled weights that are ready to be handed out.
+     */
+    public int getPoolSize() {
+        return pool.get().size();
+    }
+
+    private boolean isSampled() {
+        return config.getWeightSource().equals("bootstrapped") || config.getWeightSource().equals("UCB");
+    }
+
+    private WeightEstimator.WeightResult runOnExecutor(Callable<WeightEstimator.WeightResult> task) {
+        try {
+            return executor.submit(task).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted while fitting weights", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("could not fit weights from " + config.getWeightTrainingDatabase(),
+                    e.getCause());
+        }
+    }
+
+    private void refresh() {
+        try {
+            long start = System.currentTimeMillis();
+            createEstimator();
+            if (isSampled()) {
+                var newPool = new LinkedBlockingQueue<WeightEstimator.WeightResult>();
+                for (int i = 0; i < config.getWeightSamplePoolSize(); i++) {
+                    newPool.add(sample());
+                }
+                pool.set(newPool);
+            } else {
+                latest.set(checkFitted(estimator.predictDurationCoeffsFromAllGames()));
+            }
+            lastFailure = null;
+            version.incrementAndGet();
+            Logger.info("refitted weights in {} ms", System.currentTimeMillis() - start);
+        } catch (RuntimeException e) {
+            // keep serving the previous weights and try again at the next refresh.
+            Logger.error("could not refit weights");
+            Logger.error(e);
+            lastFailure = e;
+        }
+    }
+
+    /**
+     * Reads the games from the database again.
+     */
+    private void createEstimator() {
+        if (seedGames == null) {
+            seedGames = config.getAddSeedGames()
+                    ? SeedGameCache.get()
+                    : new ArrayList<>();
+        }
+        estimator = createEstimator(config, seedGames);
+    }
+
+    private void refill() {
+        if (estimator == null) {
+            return;
+        }
+        var currentPool = pool.get();
+        while (currentPool.size() < config.getWeightSamplePoolSize()) {
+            currentPool.add(sample());
+        }
+    }
+
+    private WeightEstimator.WeightResult sample() {
+        if (config.getWeightSource().equals("UCB")) {
+            return checkFitted(estimator.getUCBWithBootstrap(config.getTrainingNumBootstrapRuns(), true));
+        }
+        return checkFitted(estimator.sampleDurationCoeffsWithBootstrap(config.getTrainingNumBootstrapRuns(), true));
+    }
+
+    private static WeightEstimator.WeightResult checkFitted(WeightEstimator.WeightResult result) {
+        if (result == null) {
+            throw new RuntimeException("the weight estimator returned no weights");
+        }
+        return result;
+    }
+
+    public static WeightEstimator createEstimator(SimpleArchitectConfiguration config,
+                                                  List<List<Tree<String>>> seedGames) {
+        return new WeightEstimator(config.getWeightTrainingDatabase(),
+                config.getWeightTrainingDBUser(),
+                config.getWeightTrainingDBPassword(),
+                config.getTrainingSamplingLowerPercentile(),
+                config.getTrainingSamplingUpperPercentile(),
+                seedGames,
+                config.getWeightTrainingArchitectName(),
+                config.getDeletionsAsCosts());
+    }
+}
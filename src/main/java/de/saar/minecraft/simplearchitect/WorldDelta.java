@@ -0,0 +1,49 @@
+package de.saar.minecraft.simplearchitect;
+
+import de.saar.coli.minecraft.relationextractor.MinecraftObject;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * The objects added to and removed from the world since the last snapshot.
+ * Adding an object that was removed since the snapshot (and vice versa) cancels out.
+ * See {@link WorldLogReplay} for rebuilding the world from the logged deltas.
+ */
+public class WorldDelta {
+    private final Set<MinecraftObject> added = new LinkedHashSet<>();
+    private final Set<MinecraftObject> removed = new LinkedHashSet<>();
+
+    public void add(MinecraftObject object) {
+        if (!removed.remove(object)) {
+            added.add(object);
+        }
+    }
+
+    public void remove(MinecraftObject object) {
+        if (!added.remove(object)) {
+            removed.add(object);
+        }
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty();
+    }
+
+    /**
+     * Starts a new snapshot.
+     */
+    public void clear() {
+        added.clear();
+        removed.clear();
+    }
+
+    public String toJson() {
+        return "{\"added\":" + toJson(added) + ",\"removed\":" + toJson(removed) + "}";
+    }
+
+    private static String toJson(Set<MinecraftObject> objects) {
+        return "[" + objects.stream().map(MinecraftObject::asJson).collect(Collectors.joining(", ")) + "]";
+    }
+}
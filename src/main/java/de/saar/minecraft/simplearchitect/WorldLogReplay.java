@@ -0,0 +1,141 @@
+package de.saar.minecraft.simplearchitect;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Rebuilds the full world from logs written with {@code worldLogMode: delta}.
+ *
+ * <p>Feed it the log messages of one game in order through {@link #apply(String, String)};
+ * afterwards {@link #getCurrentWorldJson()} returns the world in the format of a full
+ * {@code CurrentWorld} log entry.  Objects are compared by their JSON representation.
+ *
+ * <p>As a command line tool, it reads lines of the form {@code type<TAB>message} (from a file given as
+ * first argument or from stdin) and prints the same lines, except that every {@code CurrentWorldDelta}
+ * is replaced by the corresponding full {@code CurrentWorld} entry.
+ */
+public class WorldLogReplay {
+    public static final String FULL_WORLD = "CurrentWorld";
+    public static final String WORLD_DELTA = "CurrentWorldDelta";
+
+    private final Set<String> world = new LinkedHashSet<>();
+
+    public static void main(String[] args) throws IOException {
+        var reader = args.length >= 1
+                ? Files.newBufferedReader(Paths.get(args[0]))
+                : new BufferedReader(new InputStreamReader(System.in));
+        var replay = new WorldLogReplay();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            int tab = line.indexOf('\t');
+            if (tab < 0) {
+                System.out.println(line);
+                continue;
+            }
+            String type = line.substring(0, tab);
+            if (replay.apply(type, line.substring(tab + 1))) {
+                System.out.println(FULL_WORLD + "\t" + replay.getCurrentWorldJson());
+            } else {
+                System.out.println(line);
+            }
+        }
+    }
+
+    /**
+     * Updates the world with the log entry and returns whether it was a world entry.
+     */
+    public boolean apply(String type, String message) {
+        if (type.equals(FULL_WORLD)) {
+            world.clear();
+            world.addAll(splitArray(message, 0));
+            return true;
+        }
+        if (type.equals(WORLD_DELTA)) {
+            int addedStart = message.indexOf('[', message.indexOf("\"added\""));
+            world.addAll(splitArray(message, addedStart));
+            int removedStart = message.indexOf('[', message.indexOf("\"removed\"", findEnd(message, addedStart)));
+            splitArray(message, removedStart).forEach(world::remove);
+            return true;
+        }
+        return false;
+    }
+
+    public String getCurrentWorldJson() {
+        return "[" + String.join(", ", world) + "]";
+    }
+
+    /**
+     * Returns the elements of the JSON array starting at {@code start}.
+     */
+    static List<String> splitArray(String json, int start) {
+        var result = new ArrayList<String>();
+        start = json.indexOf('[', start);
+        int end = findEnd(json, start);
+        int elementStart = start + 1;
+        int depth = 0;
+        boolean inString = false;
+        for (int i = start + 1; i < end; i++) {
+            char c = json.charAt(i);
+            if (inString) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == '"') {
+                    inString = false;
+                }
+            } else if (c == '"') {
+                inString = true;
+            } else if (c == '[' || c == '{') {
+                depth++;
+            } else if (c == ']' || c == '}') {
+                depth--;
+            } else if (c == ',' && depth == 0) {
+                addElement(result, json.substring(elementStart, i));
+                elementStart = i + 1;
+            }
+        }
+        addElement(result, json.substring(elementStart, end));
+        return result;
+    }
+
+    private static void addElement(List<String> elements, String element) {
+        element = element.strip();
+        if (!element.isEmpty()) {
+            elements.add(element);
+        }
+    }
+
+    /**
+     * Returns the position of the bracket closing the one at {@code start}.
+     */
+    private static int findEnd(String json, int start) {
+        int depth = 0;
+        boolean inString = false;
+        for (int i = start; i < json.length(); i++) {
+            char c = json.charAt(i);
+            if (inString) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == '"') {
+                    inString = false;
+                }
+            } else if (c == '"') {
+                inString = true;
+            } else if (c == '[' || c == '{') {
+                depth++;
+            } else if (c == ']' || c == '}') {
+                depth--;
+                if (depth == 0) {
+                    return i;
+                }
+            }
+        }
+        throw new IllegalArgumentException("unbalanced JSON: " + json);
+    }
+}
@@ -1,32 +1,261 @@
 package de.saar.minecraft.simplearchitect.experiments;
 
-import de.saar.minecraft.simplearchitect.SimpleArchitectConfiguration;
+import de.saar.coli.minecraft.MinecraftRealizer;
+import de.saar.minecraft.analysis.WeightEstimator;
+import de.saar.minecraft.simplearchitect.PlanCache;
+import de.saar.minecraft.simplearchitect.PlanCostCache;
+import de.saar.minecraft.simplearchitect.PlanCostEvaluator;
+import de.saar.minecraft.simplearchitect.RealizerPool;
+import org.tinylog.Logger;
+import umd.cs.shop.costs.CostFunction;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 /**
  * This class is a simple tool to compute which of the different possible plans (lowlevel, teaching, highlevel)
  * is the best according to each of the provided weight files.
+ *
+ * <p>Arguments: the output CSV file, followed by weight files or directories (all files in a directory
+ * are used).  The weight files are evaluated on all cores and every row
+ * ({@code file,scenario,<cost per instruction level>,best}) is appended to the output as soon as it is done.
+ * If the output file already exists, the rows in it are kept and only the missing ones are computed,
+ * so an interrupted run can simply be started again.
+ *
+ * <p>The plans are computed only once (see {@link PlanCache}) and every worker thread keeps its realizer
+ * from one weight file to the next, so the grammar is not loaded again for every file.
  */
 class ComputeBestPlanForFileWeights {
+    private static final List<String> SCENARIOS = List.of("house", "bridge");
+    private static final CostFunction.InstructionLevel[] LEVELS = CostFunction.InstructionLevel.values();
 
-    public static void main(String[] args) {
-        for (String scenario: List.of("house", "bridge")) {
-            System.out.println("\n\n\nScenario:" + scenario);
-            for (var arg : args) {
-                NoiseMaxExperiment.NoiseMaxArchitect architect;
-                SimpleArchitectConfiguration conf;
-                conf = new SimpleArchitectConfiguration();
-                conf.setWeightSource("default");
-                conf.setName("adaptive-optimal");
-                conf.setWeightSource("file");
-                conf.setWeightFile(arg);
-                System.out.println("file: " + arg);
-                architect = new NoiseMaxExperiment.NoiseMaxArchitect(conf);
-                // architect.getRealizer().randomizeExpectedDurations(perturbSize);
-                var plan = architect.getOptimalPlan(scenario);
-                System.out.println("best plan: " + plan.getInstructionLevel());
+    private final Path output;
+    private final Set<String> done = new HashSet<>();
+    private final AtomicInteger numRows = new AtomicInteger(0);
+    private final AtomicInteger numFailed = new AtomicInteger(0);
+    private BufferedWriter writer;
+
+    /** the realizer of a worker thread and the rules whose weights were set on it, including first occurrences */
+    private static class WorkerRealizer {
+        MinecraftRealizer realizer = MinecraftRealizer.createRealizer();
+        Set<String> modifiedRules = new HashSet<>();
+    }
+
+    private final ThreadLocal<WorkerRealizer> workerRealizers = ThreadLocal.withInitial(WorkerRealizer::new);
+
+    ComputeBestPlanForFileWeights(Path output) {
+        this.output = output;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: ComputeBestPlanForFileWeights <output.csv> <weight file or directory>...");
+            System.exit(1);
+        }
+        List<Path> weightFiles = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            var path = Path.of(args[i]);
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> files = Files.list(path)) {
+                    files.filter(Files::isRegularFile).sorted().forEach(weightFiles::add);
+                }
+            } else {
+                weightFiles.add(path);
+            }
+        }
+        new ComputeBestPlanForFileWeights(Path.of(args[0])).run(weightFiles);
+    }
+
+    void run(List<Path> weightFiles) throws IOException {
+        resume();
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (var file : weightFiles) {
+            if (SCENARIOS.stream().allMatch((scenario) -> done.contains(key(file.toString(), scenario)))) {
+                continue;
+            }
+            tasks.add(() -> {
+                evaluate(file);
+                return null;
+            });
+        }
+        Logger.info("{} of {} weight files left to evaluate", tasks.size(), weightFiles.size());
+        long start = System.currentTimeMillis();
+        var pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            for (var future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("evaluation failed", e.getCause());
+        } finally {
+            pool.shutdown();
+            synchronized (this) {
+                writer.close();
+            }
+        }
+        Logger.info("wrote {} rows in {} ms, {} weight files failed",
+                numRows.get(), System.currentTimeMillis() - start, numFailed.get());
+    }
+
+    /**
+     * Reads the rows that are already in the output file and opens it for appending.
+     * A row that was only partially written (e.g. because the previous run was killed) is removed.
+     */
+    private void resume() throws IOException {
+        if (Files.exists(output) && Files.size(output) > 0) {
+            var content = Files.readString(output, StandardCharsets.UTF_8);
+            int end = content.lastIndexOf('\n') + 1;
+            if (end < content.length()) {
+                Logger.warn("removing incomplete last row of {}", output);
+                try (var channel = FileChannel.open(output, StandardOpenOption.WRITE)) {
+                    channel.truncate(content.substring(0, end).getBytes(StandardCharsets.UTF_8).length);
+                }
+            }
+            var lines = content.substring(0, end).split("\n");
+            for (int i = 1; i < lines.length; i++) {
+                var fields = parseRow(lines[i]);
+                if (fields.size() == LEVELS.length + 3) {
+                    done.add(key(fields.get(0), fields.get(1)));
+                }
+            }
+            Logger.info("resuming {} with {} rows", output, done.size());
+            writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        } else {
+            writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8);
+            List<String> header = new ArrayList<>(List.of("file", "scenario"));
+            for (var il : LEVELS) {
+                header.add(il.toString());
+            }
+            header.add("best");
+            writeRow(header);
+        }
+    }
+
+    /**
+     * Computes the costs of all plans under the weights in {@code file} and writes a row for every scenario
+     * that is not done yet.  Files that cannot be evaluated are logged and skipped.
+     */
+    private void evaluate(Path file) {
+        try {
+            var weights = WeightEstimator.WeightResult.fromJson(Files.readString(file));
+            evaluate(file, weights, realizersFor(weights));
+        } catch (IOException | RuntimeException e) {
+            Logger.error("could not evaluate the weights in {}: {}", file, e);
+            numFailed.incrementAndGet();
+        }
+    }
+
+    private void evaluate(Path file, WeightEstimator.WeightResult weights, RealizerPool realizers) {
+        for (String scenario : SCENARIOS) {
+            if (done.contains(key(file.toString(), scenario))) {
+                continue;
+            }
+            List<String> row = new ArrayList<>(List.of(file.toString(), scenario));
+            CostFunction.InstructionLevel best = null;
+            double min = Double.POSITIVE_INFINITY;
+            for (var il : LEVELS) {
+                var planCreator = PlanCache.get(scenario, il);
+                double cost = PlanCostCache.getCost(planCreator, weights,
+                        () -> PlanCostEvaluator.getCost(realizers, planCreator, false));
+                row.add(Double.toString(cost));
+                if (cost < min) {
+                    best = il;
+                    min = cost;
+                }
+            }
+            row.add(String.valueOf(best));
+            writeRow(row);
+            numRows.incrementAndGet();
+        }
+    }
+
+    /**
+     * Sets {@code weights} on the realizer of the current thread.  Weights of rules that are not in
+     * {@code weights} cannot be reset, so the realizer is replaced if a previous file set other rules,
+     * either as a weight or as a first occurrence weight.
+     */
+    private RealizerPool realizersFor(WeightEstimator.WeightResult weights) {
+        var worker = workerRealizers.get();
+        if (!weights.weights.keySet().containsAll(worker.modifiedRules)) {
+            worker = new WorkerRealizer();
+            workerRealizers.set(worker);
+        }
+        worker.realizer.setExpectedDurations(weights.weights, false);
+        worker.modifiedRules.addAll(weights.weights.keySet());
+        worker.modifiedRules.addAll(weights.firstOccurenceWeights.keySet());
+        return RealizerPool.ofPrivate(worker.realizer, weights);
+    }
+
+    private synchronized void writeRow(List<String> fields) {
+        try {
+            List<String> escaped = new ArrayList<>();
+            for (String field : fields) {
+                escaped.add(escape(field));
+            }
+            writer.write(String.join(",", escaped));
+            writer.newLine();
+            writer.flush();
+        } catch (IOException e) {
+            throw new RuntimeException("could not write to " + output, e);
+        }
+    }
+
+    private static String key(String file, String scenario) {
+        return file + "\n" + scenario;
+    }
+
+    private static String escape(String field) {
+        if (field.contains(",") || field.contains("\"") || field.contains("\n")) {
+            return "\"" + field.replace("\"", "\"\"") + "\"";
+        }
+        return field;
+    }
+
+    /**
+     * Splits a row written by {@link #writeRow} into its fields.
+     */
+    static List<String> parseRow(String line) {
+        List<String> fields = new ArrayList<>();
+        var field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
             }
         }
+        fields.add(field.toString());
+        return fields;
     }
 }
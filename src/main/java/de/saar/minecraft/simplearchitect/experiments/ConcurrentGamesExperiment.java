@@ -0,0 +1,165 @@
+package de.saar.minecraft.simplearchitect.experiments;
+
+import de.saar.coli.minecraft.relationextractor.IntroductionMessage;
+import de.saar.coli.minecraft.relationextractor.Relation;
+import de.saar.minecraft.shared.WorldSelectMessage;
+import de.saar.minecraft.simplearchitect.ArchitectExecutors;
+import de.saar.minecraft.simplearchitect.SimpleArchitect;
+import de.saar.minecraft.simplearchitect.SimpleArchitectConfiguration;
+import org.tinylog.Logger;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures how many concurrent games one JVM can sustain, with every game on its own platform thread
+ * or on its own virtual thread, and the shared pools of {@link ArchitectExecutors} configured accordingly.
+ *
+ * <p>Every simulated game has its own architect and goes through its plan like a real game:
+ * it computes an instruction, waits for the player (the think time) and continues with the next one.
+ * The player acts on a fixed schedule, one action every think time from the start of the run, so an
+ * instruction that is computed late does not delay the next action.  The latency of an instruction is
+ * measured from the time the player's action was due (for the first instruction, the start of the run,
+ * so it includes creating the architect) until the instruction is done.  For every number of games we
+ * print one line with the latencies, the number of games that computed at least one instruction and the
+ * peak number of threads; a number of games is sustained if every game ran and the 99th percentile
+ * stays below the think time.
+ *
+ * <p>This only measures the architect's own work.  In the server, the messages of a game are handled
+ * on the threads of the networking library, which are platform threads, and the handlers synchronize
+ * on the architect, which pins a virtual thread to its carrier while the realizer runs.  So the results
+ * for virtual threads are not what the server achieves with {@code useVirtualThreads}.
+ * The pools can only be configured once per process, so run the experiment once with each mode
+ * to compare them.
+ *
+ * <p>Arguments: scenario (default house), seconds per run (default 60), think time in ms (default 2000),
+ * {@code virtual} to use virtual threads (default {@code platform}).
+ */
+public class ConcurrentGamesExperiment {
+
+    public static void main(String[] args) throws InterruptedException {
+        String scenario = args.length >= 1 ? args[0] : "house";
+        int seconds = args.length >= 2 ? Integer.parseInt(args[1]) : 60;
+        int thinkTime = args.length >= 3 ? Integer.parseInt(args[2]) : 2000;
+        ArchitectExecutors.setUseVirtualThreads(args.length >= 4 && args[3].equals("virtual"));
+        String mode = ArchitectExecutors.getUseVirtualThreads() ? "virtual," : "platform,";
+        System.out.println("threads,games,gamesRun,instructions,p50ms,p99ms,maxms,peakThreads,sustained");
+        for (int numGames = 25; numGames <= 1600; numGames *= 2) {
+            var result = run(scenario, numGames, seconds, thinkTime);
+            System.out.println(mode + numGames + "," + result);
+            if (!result.sustained) {
+                break;
+            }
+        }
+    }
+
+    static class Result {
+        int gamesRun;
+        int instructions;
+        long p50;
+        long p99;
+        long max;
+        int peakThreads;
+        boolean sustained;
+
+        @Override
+        public String toString() {
+            return gamesRun + "," + instructions + "," + p50 + "," + p99 + "," + max + "," + peakThreads
+                    + "," + sustained;
+        }
+    }
+
+    static Result run(String scenario, int numGames, int seconds, int thinkTime) throws InterruptedException {
+        var threadBean = ManagementFactory.getThreadMXBean();
+        threadBean.resetPeakThreadCount();
+        var finished = new CountDownLatch(numGames);
+        var latencies = new ConcurrentLinkedQueue<Long>();
+        var gamesRun = new AtomicInteger(0);
+        long start = System.currentTimeMillis();
+        long end = start + seconds * 1000L;
+        var conf = new SimpleArchitectConfiguration();
+        var threads = ArchitectExecutors.getUseVirtualThreads()
+                ? ArchitectExecutors.virtualThreads("game")
+                : ArchitectExecutors.daemonThreads("game");
+        for (int i = 0; i < numGames; i++) {
+            int gameId = i;
+            // one thread per game, like one connection per player; a pool would let games wait for each other
+            threads.newThread(() -> {
+                try {
+                    var architect = new SimulatedArchitect(conf);
+                    architect.initialize(WorldSelectMessage.newBuilder().setGameId(gameId).setName(scenario).build());
+                    if (architect.simulate(start, end, thinkTime, latencies) > 0) {
+                        gamesRun.incrementAndGet();
+                    }
+                } catch (InterruptedException ignored) {
+                } catch (RuntimeException | OutOfMemoryError e) {
+                    Logger.error("game {} failed: {}", gameId, e);
+                    latencies.add(Long.MAX_VALUE);
+                } finally {
+                    finished.countDown();
+                }
+            }).start();
+        }
+        if (!finished.await(seconds + 600, TimeUnit.SECONDS)) {
+            Logger.warn("not all games finished in time");
+        }
+
+        var result = new Result();
+        long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        result.gamesRun = gamesRun.get();
+        result.instructions = sorted.length;
+        if (sorted.length > 0) {
+            result.p50 = sorted[sorted.length / 2];
+            result.p99 = sorted[Math.min(sorted.length - 1, (int) (sorted.length * 0.99))];
+            result.max = sorted[sorted.length - 1];
+        }
+        result.peakThreads = threadBean.getPeakThreadCount();
+        result.sustained = result.gamesRun == numGames && result.max != Long.MAX_VALUE && result.p99 < thinkTime;
+        return result;
+    }
+
+    static class SimulatedArchitect extends SimpleArchitect {
+        public SimulatedArchitect(SimpleArchitectConfiguration config) {
+            super(config);
+        }
+
+        /**
+         * Instructs the plan over and over again until {@code end}.  The player's actions are due every
+         * {@code thinkTime} ms from {@code start}; the time from when an action was due until its instruction
+         * is done is added to {@code latencies}.  Returns the number of instructions.
+         */
+        int simulate(long start, long end, int thinkTime, ConcurrentLinkedQueue<Long> latencies)
+                throws InterruptedException {
+            var orientations = Arrays.asList(Relation.Orientation.values());
+            int step = 0;
+            long due = start;
+            while (due < end) {
+                if (plan.isEmpty()) {
+                    initializeFromPlan(planCreator);
+                    it.clear();
+                }
+                var target = plan.remove(0);
+                if (target instanceof IntroductionMessage) {
+                    continue;
+                }
+                long wait = due - System.currentTimeMillis();
+                if (wait > 0) {
+                    Thread.sleep(wait);
+                }
+                realizerCache.generateReferringExpressionTree(worldVersion, world, target, it,
+                        orientations.get(step++ % orientations.size()));
+                latencies.add(System.currentTimeMillis() - due);
+                target.getBlocks().forEach(this::addToWorld);
+                addToWorld(target);
+                it.clear();
+                it.add(target);
+                due += thinkTime;
+            }
+            return step;
+        }
+    }
+}
@@ -1,16 +1,21 @@
 package de.saar.minecraft.simplearchitect.experiments;
 
-import de.saar.coli.minecraft.relationextractor.IntroductionMessage;
-import de.saar.coli.minecraft.relationextractor.MinecraftObject;
-import de.saar.coli.minecraft.relationextractor.Relation;
-import de.saar.minecraft.shared.WorldSelectMessage;
+import de.saar.coli.minecraft.MinecraftRealizer;
+import de.saar.minecraft.analysis.WeightEstimator;
+import de.saar.minecraft.simplearchitect.PlanCache;
+import de.saar.minecraft.simplearchitect.PlanCostEvaluator;
 import de.saar.minecraft.simplearchitect.PlanCreator;
-import de.saar.minecraft.simplearchitect.PlanCreatorFromFile;
+import de.saar.minecraft.simplearchitect.PlanFeatureModel;
+import de.saar.minecraft.simplearchitect.RealizerPool;
 import de.saar.minecraft.simplearchitect.SimpleArchitect;
 import de.saar.minecraft.simplearchitect.SimpleArchitectConfiguration;
+import de.saar.minecraft.simplearchitect.WeightSnapshotService;
 import umd.cs.shop.costs.CostFunction;
 import org.tinylog.Logger;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * This class is a one-off experiment that investigates the effect of adding noise to learned weights.
@@ -25,19 +30,53 @@ import java.util.*;
 public class NoiseMaxExperiment {
 
     public static void main(String[] args) {
-        var nme = new NoiseMaxExperiment();
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 42;
+        var nme = new NoiseMaxExperiment(seed);
+        if (args.length > 1) {
+            nme.setFeatureModelTolerance(Double.parseDouble(args[1]));
+        }
+        List<Integer> perturbSizes = new ArrayList<>();
         for (int perturbSize = 2000; perturbSize<2000000; perturbSize=perturbSize*10) {
-            var res  = nme.runExperiment("bridge", 10, perturbSize);
+            perturbSizes.add(perturbSize);
+        }
+        var results = nme.runExperiment("bridge", 10, perturbSizes);
+        for (var perturbSize: perturbSizes) {
             System.out.println(perturbSize);
-            for (var e: res.entrySet()) {
+            for (var e: results.get(perturbSize).entrySet()) {
                 System.out.println(e.getKey() + ":" + e.getValue());
             }
         }
     }
 
-    NoiseMaxArchitect architect;
+    /**
+     * The result of one run: the instruction level of the optimal plan and the weights
+     * of the realizer the plans were realized with.
+     */
+    record Run(String instructionLevel, String realizerWeights) {}
+
     SimpleArchitectConfiguration conf;
+    private final long seed;
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+    /** the (unperturbed) weights, fitted once for all runs. */
+    private WeightEstimator.WeightResult baseWeights;
+    /** negative to realize all plans in every run, see {@link #setFeatureModelTolerance(double)}. */
+    private double featureModelTolerance = -1;
+    /** for every scenario, the feature models built under the base weights, shared by all runs. */
+    private final Map<String, Map<CostFunction.InstructionLevel, PlanFeatureModel>> baseModels = new HashMap<>();
+    /** the realizer of every worker thread, with the base weights between runs, see {@link #oneRun}. */
+    private final ThreadLocal<MinecraftRealizer> realizers =
+            ThreadLocal.withInitial(() -> PlanCostEvaluator.createRealizer(getBaseWeights()));
+
     public NoiseMaxExperiment() {
+        this(42);
+    }
+
+    /**
+     * @param seed the seed from which the seeds of all runs are derived, so that experiments are reproducible
+     *             independently of the number of threads.
+     */
+    public NoiseMaxExperiment(long seed) {
+        this.seed = seed;
         conf = new SimpleArchitectConfiguration();
         conf.setWeightSource("default");
         conf.setName("adaptive-optimal");
@@ -46,30 +85,144 @@ public class NoiseMaxExperiment {
         conf.setWeightTrainingArchitectName("");
         conf.setWeightTrainingDatabase("jdbc:mariadb://localhost:3306/RANDOMOPTIMALEVALBRIDGE");
     }
-    
+
+    /**
+     * Creates an experiment that perturbs {@code baseWeights} instead of fitting them from the database.
+     */
+    NoiseMaxExperiment(long seed, WeightEstimator.WeightResult baseWeights) {
+        this(seed);
+        this.baseWeights = baseWeights;
+    }
+
+    private synchronized WeightEstimator.WeightResult getBaseWeights() {
+        if (baseWeights == null) {
+            baseWeights = WeightSnapshotService.createEstimator(conf, List.of()).predictDurationCoeffsFromAllGames();
+        }
+        return baseWeights;
+    }
+
+    /**
+     * Costs the plans with {@link PlanFeatureModel}s that are built once under the base weights and are only
+     * realized again for a run if a weight of the run differs by more than {@code tolerance} from the base
+     * weights (e.g. {@code Double.POSITIVE_INFINITY} to cost the trees realized under the base weights
+     * in all runs).  A negative tolerance realizes all plans in every run.
+     */
+    public void setFeatureModelTolerance(double tolerance) {
+        this.featureModelTolerance = tolerance;
+    }
+
+    /**
+     * Sets the number of threads the runs are distributed over; the results do not depend on it.
+     */
+    public void setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+    }
+
     public Map<String,Integer> runExperiment(String scenario, int numRuns, int perturbSize) {
-        HashMap<String, Integer> result = new HashMap<>();
-        for (int i = 0; i < numRuns; i++) {
-            String res = oneRun(scenario, perturbSize);
-            result.putIfAbsent(res, 0);
-            result.put(res, result.get(res)+1);
+        return runExperiment(scenario, numRuns, List.of(perturbSize)).get(perturbSize);
+    }
+
+    /**
+     * Runs {@code numRuns} runs for every perturbation size on all cores (see {@link #setNumThreads})
+     * and returns, for every
+     * perturbation size, how often each instruction level was the optimal one.
+     * Every worker thread has its own realizer; the weights are fitted only once.
+     */
+    public Map<Integer, Map<String,Integer>> runExperiment(String scenario, int numRuns, List<Integer> perturbSizes) {
+        List<Callable<Run>> runs = new ArrayList<>();
+        for (int perturbSize: perturbSizes) {
+            for (int i = 0; i < numRuns; i++) {
+                int run = i;
+                runs.add(() -> run(scenario, perturbSize, run));
+            }
+        }
+        var pool = new ForkJoinPool(numThreads);
+        Map<Integer, Map<String,Integer>> result = new LinkedHashMap<>();
+        try {
+            var futures = pool.invokeAll(runs);
+            int i = 0;
+            for (int perturbSize: perturbSizes) {
+                var histogram = result.computeIfAbsent(perturbSize, (x) -> new TreeMap<>());
+                for (int j = 0; j < numRuns; j++, i++) {
+                    histogram.merge(futures.get(i).get().instructionLevel(), 1, Integer::sum);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("run failed", e.getCause());
+        } finally {
+            pool.shutdown();
         }
         return result;
     }
 
-    public String oneRun(String scenario, int perturbSize) {
-        architect = new NoiseMaxArchitect(conf);
-        // System.out.println(architect.weights.toJson());
-        var rand = new Random();
-        for (var entry: architect.weights.weights.entrySet()) {
-            entry.setValue(entry.getValue() - (rand.nextDouble()-0.5) * perturbSize);
+    /**
+     * Performs run number {@code run} for {@code perturbSize} on the current thread.  The result only depends on the seed of the experiment, {@code perturbSize}
+     * and {@code run}, not on the runs the thread did before.
+     */
+    Run run(String scenario, int perturbSize, int run) {
+        // every run starts from the base models, so that its result does not depend on earlier runs
+        var models = featureModelTolerance < 0 ? null : new EnumMap<>(getBaseModels(scenario));
+        return oneRun(scenario, getBaseWeights(), perturbSize, new Random(runSeed(perturbSize, run)),
+                realizers.get(), models);
+    }
+
+    /**
+     * Returns the feature models for {@code scenario} under the base weights, building them on first use.
+     */
+    private synchronized Map<CostFunction.InstructionLevel, PlanFeatureModel> getBaseModels(String scenario) {
+        return baseModels.computeIfAbsent(scenario, (s) -> {
+            var base = getBaseWeights();
+            var realizers = RealizerPool.ofPrivate(PlanCostEvaluator.createRealizer(base), base);
+            Map<CostFunction.InstructionLevel, PlanFeatureModel> models =
+                    new EnumMap<>(CostFunction.InstructionLevel.class);
+            for (var il : CostFunction.InstructionLevel.values()) {
+                models.put(il, PlanFeatureModel.create(PlanCache.get(s, il), realizers));
+            }
+            return models;
+        });
+    }
+
+    private long runSeed(int perturbSize, int run) {
+        long h = seed;
+        h = h * 1000003 + perturbSize;
+        h = h * 1000003 + run;
+        return h;
+    }
+
+    /**
+     * Perturbs a copy of {@code base} with uniform noise of width {@code perturbSize}
+     * (in the order of the sorted rule names, so that a seed always yields the same weights)
+     * and finds the optimal plan under the perturbed weights.
+     * @param realizer a realizer with the weights of {@code base}; the perturbed weights are set on it for
+     *                 this run and {@code base} is set again afterwards.
+     * @param models the feature models of this run, only used with a feature model tolerance;
+     *               models that are rebuilt for the perturbed weights replace the ones in this map.
+     */
+    Run oneRun(String scenario, WeightEstimator.WeightResult base, int perturbSize, Random rand,
+                  MinecraftRealizer realizer, Map<CostFunction.InstructionLevel, PlanFeatureModel> models) {
+        var weights = WeightEstimator.WeightResult.fromJson(base.toJson());
+        for (var entry: new TreeMap<>(weights.weights).entrySet()) {
+            weights.weights.put(entry.getKey(), entry.getValue() - (rand.nextDouble()-0.5) * perturbSize);
+        }
+        for (var entry: new TreeMap<>(weights.firstOccurenceWeights).entrySet()) {
+            weights.firstOccurenceWeights.put(entry.getKey(), entry.getValue() - (rand.nextDouble()-0.5) * perturbSize);
         }
-        for (var entry: architect.weights.firstOccurenceWeights.entrySet()) {
-            entry.setValue(entry.getValue() - (rand.nextDouble()-0.5) * perturbSize);
+        // the perturbed weights only change rules of base, so setting base again restores the realizer
+        realizer.setExpectedDurations(weights.weights, false);
+        try {
+            String realizerWeights = realizer.getWeightsAsJson();
+            // the perturbed weights are only used once, sharing realizers for them would not pay off
+            var runRealizers = RealizerPool.ofPrivate(realizer, weights);
+            var plan = featureModelTolerance < 0
+                    ? PlanCostEvaluator.getOptimalPlan(scenario, runRealizers)
+                    : PlanCostEvaluator.getOptimalPlan(scenario, runRealizers, models, featureModelTolerance);
+            return new Run(plan.getInstructionLevel(), realizerWeights);
+        } finally {
+            realizer.setExpectedDurations(base.weights, false);
         }
-        // architect.getRealizer().randomizeExpectedDurations(perturbSize);
-	    var plan = architect.getOptimalPlan(scenario);
-	    return plan.getInstructionLevel();
     }
 
     static class NoiseMaxArchitect extends SimpleArchitect {
@@ -78,37 +231,20 @@ public class NoiseMaxExperiment {
         }
 
         /**
-         * computes the plan and initializes the world.
+         * Returns the plan creator with the lowest predicted cost for {@code scenario}.
+         * If the realizer uses trained or default weights, the instruction levels are evaluated in parallel
+         * (see {@link PlanCostEvaluator#getOptimalPlan}); randomized weights only exist in this architect's
+         * realizer, so they are evaluated sequentially.
          */
-        @Override
-        public synchronized void initialize(WorldSelectMessage message) {
-            Logger.debug("initializing with {}", message);
-            setGameId(message.getGameId());
-            scenario = message.getName();
-            String instructionlevel = config.getInstructionlevel();
-            if (!config.getPlanFile().isEmpty()) {
-                planCreator = new PlanCreatorFromFile(scenario,
-                        config.getPlanFile());
-            } else {
-                if (instructionlevel.equals("adaptive")) {
-                    planCreator = getOptimalPlan(scenario);
-                } else {
-                    planCreator = new PlanCreator(scenario, CostFunction.InstructionLevel.valueOf(instructionlevel));
-                }
-            }
-            this.plan = planCreator.getPlan();
-            this.world = planCreator.getInitialWorld();
-            this.alreadyPlacedBlocks = planCreator.getBlocksCurrentWorld();
-            Logger.debug("initialization done");
-            readyCounter.countDown();
-        }
-
         public PlanCreator getOptimalPlan(String scenario) {
+            if (realizer == null) {
+                return PlanCostEvaluator.getOptimalPlan(scenario, weights);
+            }
             PlanCreator argmin = null;
             double min = Double.POSITIVE_INFINITY;
             for (var il : CostFunction.InstructionLevel.values()) {
                 Logger.warn("trying instruction level " + il);
-                var planCreator = new PlanCreator(scenario, il);
+                var planCreator = PlanCache.get(scenario, il);
                 double cost = getCostForPlanCreator(planCreator);
                 Logger.warn("cost: " + cost);
                 if (cost < min) {
@@ -124,69 +260,11 @@ public class NoiseMaxExperiment {
         }
 
         /**
-         * Returns the predicted cost (in seconds) to fulfill the plan created by {@code planCreator}.
-         * The cost is the negative weight of all derivation trees for the plans;
-         * introduction messages are ignored.
+         * Returns the predicted cost (in seconds) to fulfill the plan created by {@code planCreator}
+         * using this architect's realizers, see {@link PlanCostEvaluator#getCost}.
          */
         protected double getCostForPlanCreator(PlanCreator planCreator, boolean printInstructions) {
-            Logger.debug("computing cost for {}", planCreator.getInstructionLevel());
-            var tmpplan = planCreator.getPlan();
-            var tmpworld = planCreator.getInitialWorld();
-            double totalCost = 0;
-            HashSet<MinecraftObject> it = new HashSet<>();
-            Set<String> knownOjbectTypes = new HashSet<>();
-            for (var mco : tmpplan) {
-                if (mco instanceof IntroductionMessage im) {
-                    if (!im.starting) {
-                        tmpworld.add(im.object);
-                        it.add(im.object);
-                        knownOjbectTypes.add(im.object.getClass().getSimpleName().toLowerCase());
-                    }
-                    continue;
-                }
-                String currentObjectType = mco.getClass().getSimpleName().toLowerCase();
-                Logger.debug("current object {}", currentObjectType);
-                boolean objectFirstOccurence = !knownOjbectTypes.contains(currentObjectType);
-                if (objectFirstOccurence && weights != null) {
-                    // temporarily set the weight to the first occurence one
-                    // ... if we have an estimate for the first occurence
-                    if (weights.firstOccurenceWeights.containsKey("i" + currentObjectType)) {
-                        realizer.setExpectedDurations(
-                                Map.of("i" + currentObjectType, weights.firstOccurenceWeights.get("i" + currentObjectType)),
-                                false);
-                    }
-                }
-                var tree = realizer.generateReferringExpressionTree(tmpworld, mco, it, Relation.Orientation.XMINUS);
-                if (printInstructions) {
-                    System.out.println(tree);
-                    System.out.println(realizer.treeToReferringExpression(tree) + " (" + -realizer.getWeightForTree(tree) + ")");
-                }
-                if (tree == null) {
-                    Logger.warn("tree is null in the following context: ");
-                    Logger.warn("current target: {}", mco);
-                    Logger.warn("current world: {}", toJson(tmpworld));
-                    Logger.warn("it: {}", toJson(it));
-                }
-                totalCost -= realizer.getWeightForTree(tree);
-                tmpworld.add(mco);
-                tmpworld.addAll(mco.getBlocks());
-                it.clear();
-                it.add(mco);
-                if (objectFirstOccurence) {
-                    knownOjbectTypes.add(currentObjectType);
-                    // reset weights
-                    if (weights != null && weights.weights.containsKey("i" + currentObjectType)) {
-                        realizer.setExpectedDurations(
-                                Map.of("i" + currentObjectType, weights.weights.get("i" + currentObjectType)),
-                                false);
-                    }
-                }
-
-            /* TODO: In a real world we would also have the last block as "it", but we don't know which it is.
-               Add a random block from getBlocks?
-             */
-            }
-            return totalCost;
+            return PlanCostEvaluator.getCost(realizers, planCreator, printInstructions);
         }
     }
 }
@@ -0,0 +1,47 @@
+package de.saar.minecraft.simplearchitect;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ArchitectExecutorsTest {
+    @Test
+    public void testCancelledTaskDoesNotRun() throws Exception {
+        var executor = Executors.newSingleThreadExecutor();
+        try {
+            var busy = new CountDownLatch(1);
+            executor.execute(() -> {
+                try {
+                    busy.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            var ran = new AtomicBoolean(false);
+            var future = ArchitectExecutors.supplyCancellable(() -> ran.getAndSet(true), executor);
+            future.cancel(false);
+            busy.countDown();
+            // wait until the executor is done with everything that was queued before
+            executor.submit(() -> {}).get(10, TimeUnit.SECONDS);
+            assertFalse(ran.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testResult() throws Exception {
+        var executor = Executors.newSingleThreadExecutor();
+        try {
+            assertEquals("tree", ArchitectExecutors.supplyCancellable(() -> "tree", executor)
+                    .get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package de.saar.minecraft.simplearchitect;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ArchitectPoolTest {
+    @Test
+    public void testTargetSize() {
+        // no games yet
+        assertEquals(1, ArchitectPool.targetSize(Double.POSITIVE_INFINITY, 2.0, 1, 8));
+        // a game every minute, an architect takes two seconds
+        assertEquals(2, ArchitectPool.targetSize(60, 2.0, 1, 8));
+        // a game every half second
+        assertEquals(5, ArchitectPool.targetSize(0.5, 2.0, 1, 8));
+        assertEquals(8, ArchitectPool.targetSize(0.01, 2.0, 1, 8));
+        assertEquals(3, ArchitectPool.targetSize(60, 2.0, 3, 8));
+    }
+
+    @Test
+    public void testStaleArchitectsAreDiscarded() throws InterruptedException {
+        var version = new AtomicLong(0);
+        List<SimpleArchitect> created = new CopyOnWriteArrayList<>();
+        var pool = new ArchitectPool(() -> {
+            var architect = new SimpleArchitect(new SimpleArchitectConfiguration());
+            created.add(architect);
+            return architect;
+        }, version::get, 1, 1);
+        try {
+            pool.start();
+            awaitReady(pool);
+            assertSame(created.get(0), pool.take());
+            awaitReady(pool);
+            // the weights are refitted, the ready architect has the old ones
+            version.incrementAndGet();
+            var architect = pool.take();
+            assertEquals(1, pool.getNumDiscarded());
+            assertNotSame(created.get(1), architect);
+            assertTrue(created.indexOf(architect) >= 2);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void awaitReady(ArchitectPool pool) throws InterruptedException {
+        for (int i = 0; i < 500 && pool.getNumReady() == 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, pool.getNumReady());
+    }
+}
@@ -0,0 +1,84 @@
+package de.saar.minecraft.simplearchitect;
+
+import de.saar.coli.minecraft.relationextractor.Block;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BlockIndexTest {
+    @Test
+    public void testPacking() {
+        int[][] positions = {{0, 0, 0}, {-1, -1, -1}, {5, 66, -7}, {-30000000, -2048, 30000000},
+                {33554431, 2047, -33554432}, {-33554432, 0, 0}};
+        for (var pos : positions) {
+            long packed = BlockIndex.pack(pos[0], pos[1], pos[2]);
+            assertEquals(pos[0], BlockIndex.unpackX(packed));
+            assertEquals(pos[1], BlockIndex.unpackY(packed));
+            assertEquals(pos[2], BlockIndex.unpackZ(packed));
+        }
+    }
+
+    @Test
+    public void testSameAsHashSet() {
+        var random = new Random(42);
+        var index = new BlockIndex();
+        Set<Block> expected = new HashSet<>();
+        for (int i = 0; i < 20000; i++) {
+            var block = new Block(random.nextInt(20) - 10, random.nextInt(10) + 60, random.nextInt(20) - 10);
+            if (random.nextBoolean()) {
+                assertEquals(expected.add(block), index.add(block));
+            } else {
+                assertEquals(expected.remove(block), index.remove(block));
+            }
+            assertEquals(expected.size(), index.size());
+        }
+        assertEquals(expected, index.toBlocks());
+        // the position that is packed to the marker for free slots
+        var special = new Block(-33554432, 0, 0);
+        assertFalse(index.contains(special));
+        assertTrue(index.add(special));
+        assertTrue(index.contains(special));
+        assertTrue(index.remove(special));
+        assertFalse(index.contains(special));
+    }
+
+    @Test
+    public void testSetOperations() {
+        var a = new BlockIndex();
+        var b = new BlockIndex();
+        for (int x = 0; x < 10; x++) {
+            a.add(x, 0, 0);
+            if (x % 2 == 0) {
+                b.add(x, 0, 0);
+            }
+        }
+        var copy = new BlockIndex(a);
+        copy.removeAll(b);
+        assertEquals(5, copy.size());
+        assertFalse(copy.contains(2, 0, 0));
+        assertTrue(copy.contains(3, 0, 0));
+        assertEquals(10, a.size());
+        b.removeAll(a);
+        assertTrue(b.isEmpty());
+    }
+
+    @Test
+    public void testBoundingBox() {
+        var index = new BlockIndex();
+        for (int x = 0; x < 10; x++) {
+            for (int z = 0; z < 10; z++) {
+                index.add(x, 66, z);
+            }
+        }
+        assertEquals(4, index.countInBox(2, 66, 2, 3, 66, 3));
+        assertEquals(100, index.countInBox(-100, 0, -100, 100, 100, 100));
+        assertEquals(0, index.countInBox(0, 67, 0, 9, 70, 9));
+        Set<Block> inBox = new HashSet<>();
+        index.forEachInBox(8, 60, 8, 12, 70, 12, (x, y, z) -> inBox.add(new Block(x, y, z)));
+        assertEquals(Set.of(new Block(8, 66, 8), new Block(8, 66, 9), new Block(9, 66, 8), new Block(9, 66, 9)), inBox);
+    }
+}
@@ -0,0 +1,40 @@
+package de.saar.minecraft.simplearchitect;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import umd.cs.shop.costs.CostFunction;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PlanArtifactTest {
+    @Test
+    public void testRoundTrip(@TempDir Path dir) throws IOException {
+        for (var level : CostFunction.InstructionLevel.values()) {
+            Path file = PlanArtifact.getPath(dir, "bridge", level);
+            PlanArtifact.compile("bridge", level, file);
+            var expected = new PlanCreator("bridge", level);
+            var loaded = new PlanCreatorFromArtifact("bridge", level, file);
+            assertEquals(expected.getPlan(), loaded.getPlan());
+            assertEquals(expected.getInitialWorld(), loaded.getInitialWorld());
+            assertEquals(expected.getBlocksCurrentWorld(), loaded.getBlocksCurrentWorld());
+        }
+    }
+
+    @Test
+    public void testRejectsStaleArtifact(@TempDir Path dir) throws IOException {
+        var level = CostFunction.InstructionLevel.BLOCK;
+        Path file = PlanArtifact.getPath(dir, "house", level);
+        PlanArtifact.compile("house", level, file);
+        // the checksum starts after magic and version
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[8] ^= 1;
+        Files.write(file, bytes);
+        assertThrows(IOException.class, () -> new PlanCreatorFromArtifact("house", level, file));
+        // a different scenario is rejected as well
+        assertThrows(IOException.class, () -> new PlanCreatorFromArtifact("bridge", level, file));
+    }
+}
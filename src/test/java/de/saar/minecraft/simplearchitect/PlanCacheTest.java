@@ -0,0 +1,25 @@
+package de.saar.minecraft.simplearchitect;
+
+import org.junit.jupiter.api.Test;
+import umd.cs.shop.costs.CostFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PlanCacheTest {
+    @Test
+    public void testSharedPlanCreator() {
+        var first = PlanCache.get("house", CostFunction.InstructionLevel.BLOCK);
+        var second = PlanCache.get("house", CostFunction.InstructionLevel.BLOCK);
+        assertSame(first, second);
+        assertNotSame(first, PlanCache.get("house", CostFunction.InstructionLevel.HIGHLEVEL));
+
+        // every consumer gets its own copy
+        var plan = first.getPlan();
+        int size = plan.size();
+        plan.remove(0);
+        assertEquals(size, second.getPlan().size());
+        var world = first.getInitialWorld();
+        world.clear();
+        assertFalse(second.getInitialWorld().isEmpty());
+    }
+}
@@ -0,0 +1,75 @@
+package de.saar.minecraft.simplearchitect;
+
+import de.saar.coli.minecraft.relationextractor.Block;
+import de.saar.coli.minecraft.relationextractor.MinecraftObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PlanCostCacheTest {
+    private static PlanCreator planCreator(List<MinecraftObject> plan) {
+        var planCreator = new PlanCreator();
+        planCreator.plan = plan;
+        planCreator.world = Set.of(new Block(0, 65, 0), new Block(1, 65, 0));
+        return planCreator;
+    }
+
+    @AfterEach
+    public void tearDown() {
+        PlanCostCache.setFile(null);
+        PlanCostCache.clear();
+    }
+
+    @Test
+    public void testCostsAreComputedOnce(@TempDir Path dir) {
+        String file = dir.resolve("costs.txt").toString();
+        PlanCostCache.setFile(file);
+        var first = planCreator(List.of(new Block(1, 66, 0), new Block(2, 66, 0)));
+        var samePlan = planCreator(List.of(new Block(1, 66, 0), new Block(2, 66, 0)));
+        var otherPlan = planCreator(List.of(new Block(2, 66, 0), new Block(1, 66, 0)));
+        assertEquals(PlanCostCache.planFingerprint(first), PlanCostCache.planFingerprint(samePlan));
+        assertNotEquals(PlanCostCache.planFingerprint(first), PlanCostCache.planFingerprint(otherPlan));
+
+        var numComputed = new AtomicInteger();
+        assertEquals(3.0, PlanCostCache.getCost(first, null, () -> numComputed.incrementAndGet() + 2.0));
+        assertEquals(3.0, PlanCostCache.getCost(samePlan, null, () -> numComputed.incrementAndGet() + 2.0));
+        assertEquals(1, numComputed.get());
+        assertEquals(4.0, PlanCostCache.getCost(otherPlan, null, () -> numComputed.incrementAndGet() + 2.0));
+
+        // the costs survive a restart
+        PlanCostCache.setFile(null);
+        PlanCostCache.clear();
+        PlanCostCache.setFile(file);
+        assertEquals(2, PlanCostCache.size());
+        assertEquals(3.0, PlanCostCache.getCost(first, null, () -> -1.0));
+    }
+
+    @Test
+    public void testFileOfOtherRealizerIsDiscarded(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("costs.txt");
+        var planCreator = planCreator(List.of(new Block(1, 66, 0)));
+        String line = PlanCostCache.planFingerprint(planCreator) + " "
+                + PlanCostEvaluator.weightsFingerprint(null) + " 7.0";
+        Files.write(file, List.of("#realizer 0123", line), StandardCharsets.UTF_8);
+        PlanCostCache.setFile(file.toString());
+        assertEquals(0, PlanCostCache.size());
+        assertEquals(2.0, PlanCostCache.getCost(planCreator, null, () -> 2.0));
+
+        // the file was written again for this realizer
+        PlanCostCache.setFile(null);
+        PlanCostCache.clear();
+        PlanCostCache.setFile(file.toString());
+        assertEquals(2.0, PlanCostCache.getCost(planCreator, null, () -> -1.0));
+        assertEquals("#realizer " + RealizerChecksum.get(), Files.readAllLines(file).get(0));
+    }
+}
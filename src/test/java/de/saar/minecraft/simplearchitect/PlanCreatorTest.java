@@ -0,0 +1,65 @@
+package de.saar.minecraft.simplearchitect;
+
+import de.saar.coli.minecraft.relationextractor.Block;
+import de.saar.coli.minecraft.relationextractor.IntroductionMessage;
+import de.saar.coli.minecraft.relationextractor.MinecraftObject;
+import org.junit.jupiter.api.Test;
+import umd.cs.shop.costs.CostFunction;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PlanCreatorTest {
+    private static final String PLAN = String.join("\n",
+            "(!place-block stone 1.0 66.0 -2.0 )",
+            "(!build-wall-starting 3 66 1 4 2 2 )",
+            "(!build-wall 3 66 1 4 2 2 )",
+            "(!build-wall-finished 3 66 1 4 2 2 )",
+            "(!place-block-hidden stone 1 67 1 )",
+            "(!build-stairs 5 66 -3.7 3 2 2 4 )",
+            "(!remove-it-wall 3 66 1 4 2 2 )",
+            "",
+            "(!build-railing 1e0 66 +1 3 3 )",
+            "(!build-floor 1 65 1 2 3 1 )  ",
+            "(!build-row 1 66 1 3 1 )",
+            "");
+
+    private static PlanCreator planCreator(CostFunction.InstructionLevel instructionLevel) {
+        var planCreator = new PlanCreator();
+        planCreator.instructionLevel = instructionLevel;
+        return planCreator;
+    }
+
+    @Test
+    public void testTransformPlan() {
+        var pc = planCreator(CostFunction.InstructionLevel.MEDIUM);
+        String[] wall = "(!build-wall 3 66 1 4 2 2".split(" ");
+        List<MinecraftObject> expected = List.of(
+                new Block(1, 66, -2),
+                new IntroductionMessage(pc.createWall(wall), true, "wall"),
+                pc.createWall(wall),
+                new IntroductionMessage(pc.createWall(wall), false, "wall"),
+                pc.createStairs("(!build-stairs 5 66 -3.7 3 2 2 4".split(" ")),
+                pc.createRailing("(!build-railing 1 66 1 3 3".split(" ")),
+                pc.createFloor("(!build-floor 1 65 1 2 3 1".split(" ")),
+                pc.createRow("(!build-row 1 66 1 3 1".split(" ")));
+        assertEquals(expected, pc.transformPlan(PLAN));
+
+        // no introduction messages on block level
+        var blockLevel = planCreator(CostFunction.InstructionLevel.BLOCK).transformPlan(PLAN);
+        assertEquals(expected.size() - 2, blockLevel.size());
+        assertTrue(blockLevel.stream().noneMatch(x -> x instanceof IntroductionMessage));
+    }
+
+    @Test
+    public void testNumbers() {
+        var tokens = new PlanTokenizer("(!op 0 -0.5 12.9 -12.9 +7 2147483648 1e3 -1.5E1\n");
+        assertTrue(tokens.nextLine());
+        assertTrue(tokens.operatorIs("(!op"));
+        for (String number : List.of("0", "-0.5", "12.9", "-12.9", "+7", "2147483648", "1e3", "-1.5E1")) {
+            assertEquals((int) Double.parseDouble(number), tokens.nextInt(), number);
+        }
+        assertFalse(tokens.nextLine());
+    }
+}
@@ -0,0 +1,74 @@
+package de.saar.minecraft.simplearchitect;
+
+import de.saar.coli.minecraft.MinecraftRealizer;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RealizerPoolTest {
+    @Test
+    public void testRealizersAreReused() {
+        var pool = RealizerPool.shared(null);
+        assertSame(pool, RealizerPool.shared(null));
+        // the first realizer is created with the pool
+        assertTrue(pool.getNumRealizers() >= 1);
+        var first = pool.withRealizer((realizer) -> realizer);
+        int numRealizers = pool.getNumRealizers();
+        assertSame(first, pool.withRealizer((realizer) -> realizer));
+        assertEquals(numRealizers, pool.getNumRealizers());
+    }
+
+    @Test
+    public void testCallersWaitForFreeRealizer() throws Exception {
+        var pool = RealizerPool.create(null, 1);
+        assertEquals(1, pool.getNumRealizers());
+        var borrowed = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var first = CompletableFuture.supplyAsync(() -> pool.withRealizer((realizer) -> {
+            borrowed.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return realizer;
+        }));
+        borrowed.await();
+        var second = CompletableFuture.supplyAsync(() -> pool.withRealizer((realizer) -> realizer));
+        assertThrows(TimeoutException.class, () -> second.get(100, TimeUnit.MILLISECONDS));
+        release.countDown();
+        assertSame(first.get(), second.get());
+        assertEquals(1, pool.getNumRealizers());
+    }
+
+    @Test
+    public void testGamesWithSameWeightsShareRealizers() {
+        var first = new SimpleArchitect(new SimpleArchitectConfiguration());
+        int numRealizers = first.realizers.getNumRealizers();
+        var second = new SimpleArchitect(new SimpleArchitectConfiguration());
+        assertSame(first.realizers, second.realizers);
+        assertEquals(numRealizers, second.realizers.getNumRealizers());
+    }
+
+    @Test
+    public void testNoFirstOccurrenceWeightsForDefaultWeights() {
+        var pool = RealizerPool.shared(null);
+        assertNull(pool.getWeights());
+        assertSame(pool, pool.forFirstOccurrence("iwall"));
+    }
+
+    @Test
+    public void testPrivatePool() {
+        var realizer = MinecraftRealizer.createRealizer();
+        var pool = RealizerPool.ofPrivate(realizer);
+        assertTrue(pool.isPrivate());
+        assertSame(realizer, pool.withRealizer((r) -> r));
+        assertSame(realizer, pool.forFirstOccurrence("iwall").withRealizer((r) -> r));
+        assertEquals(1, pool.getNumRealizers());
+    }
+}
@@ -0,0 +1,29 @@
+package de.saar.minecraft.simplearchitect;
+
+import de.saar.coli.minecraft.relationextractor.Block;
+import de.saar.coli.minecraft.relationextractor.UniqueBlock;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReferringExpressionCacheTest {
+    @Test
+    public void testBlocksWithEqualHashCodesHaveDifferentVersions() {
+        var first = new Block(0, 0, 31);
+        var second = new Block(0, 1, 0);
+        assertEquals(first.hashCode(), second.hashCode());
+        var empty = ReferringExpressionCache.WorldVersion.EMPTY;
+        assertNotEquals(empty.add(first), empty.add(second));
+    }
+
+    @Test
+    public void testVersionOnlyDependsOnContent() {
+        var block = new Block(1, 66, 2);
+        var unique = new UniqueBlock("blue", 1, 66, 2);
+        var version = ReferringExpressionCache.WorldVersion.EMPTY.add(new Block(0, 65, 0));
+        assertEquals(version.add(block).add(unique), version.add(unique).add(block));
+        assertEquals(version, version.add(block).remove(block));
+        assertNotEquals(version.add(block), version.add(unique));
+        assertEquals(2, version.add(block).size());
+    }
+}
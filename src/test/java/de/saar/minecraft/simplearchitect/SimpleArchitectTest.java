@@ -6,6 +6,7 @@ import de.saar.coli.minecraft.relationextractor.Relation;
 import de.saar.minecraft.shared.WorldSelectMessage;
 import org.junit.jupiter.api.Test;
 
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class SimpleArchitectTest {
@@ -28,7 +29,32 @@ public class SimpleArchitectTest {
             objective = plan.get(0);
         }
         //System.out.println(objective.toString());
-        System.out.println(architect.realizer.generateInstruction(architect.world,
-                objective, architect.it, Relation.Orientation.ZPLUS));
+        var finalObjective = objective;
+        String instruction = architect.realizers.withRealizer((realizer) -> realizer.generateInstruction(
+                architect.world, finalObjective, architect.it, Relation.Orientation.ZPLUS));
+        System.out.println(instruction);
+    }
+
+    @Test
+    public void testNoFallbackBlockWithPrivateRealizer() {
+        var config = new SimpleArchitectConfiguration();
+        config.setWeightSource("random");
+        config.setRealizerBudgetMillis(500);
+        var architect = new SimpleArchitect(config);
+        // the only realizer is busy with the object that exceeded the budget
+        assertTrue(architect.realizers.isPrivate());
+        assertFalse(architect.canRealizeFallbackBlock());
+        assertTrue(new SimpleArchitect(new SimpleArchitectConfiguration()).canRealizeFallbackBlock());
+    }
+
+    @Test
+    public void testAdaptiveLevelIsSelectedLazilyWithPrivateRealizer() {
+        var config = new SimpleArchitectConfiguration();
+        config.setWeightSource("random");
+        config.setInstructionlevel("adaptive");
+        var architect = new SimpleArchitect(config);
+        // nothing is realized before the scenario is known
+        assertTrue(architect.realizers.isPrivate());
+        assertTrue(architect.adaptiveLevels.isEmpty());
     }
 }
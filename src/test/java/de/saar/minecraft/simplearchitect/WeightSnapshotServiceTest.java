@@ -0,0 +1,23 @@
+package de.saar.minecraft.simplearchitect;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WeightSnapshotServiceTest {
+    @Test
+    public void testFailedFirstFit() {
+        var config = new SimpleArchitectConfiguration();
+        config.setWeightSource("optimal");
+        config.setWeightTrainingDatabase("jdbc:nonexistent:weights");
+        var service = new WeightSnapshotService(config);
+        try {
+            var e = assertThrows(RuntimeException.class, service::getWeights);
+            assertTrue(e.getMessage().contains("jdbc:nonexistent:weights"), e.getMessage());
+            assertNotNull(e.getCause());
+            assertEquals(0, service.getVersion());
+        } finally {
+            service.shutdown();
+        }
+    }
+}
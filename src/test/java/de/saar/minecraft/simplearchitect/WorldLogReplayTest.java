@@ -0,0 +1,76 @@
+package de.saar.minecraft.simplearchitect;
+
+import de.saar.coli.minecraft.relationextractor.Block;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WorldLogReplayTest {
+    @Test
+    public void testReplayDeltas() {
+        var a = new Block(1, 66, 1);
+        var b = new Block(2, 66, 1);
+        var c = new Block(3, 66, 1);
+        var replay = new WorldLogReplay();
+        assertTrue(replay.apply(WorldLogReplay.FULL_WORLD, "[" + a.asJson() + ", " + b.asJson() + "]"));
+
+        var delta = new WorldDelta();
+        delta.add(c);
+        delta.remove(a);
+        delta.add(a);  // cancels out the removal
+        delta.remove(b);
+        assertTrue(replay.apply(WorldLogReplay.WORLD_DELTA, delta.toJson()));
+        assertEquals("[" + a.asJson() + ", " + c.asJson() + "]", replay.getCurrentWorldJson());
+
+        assertFalse(replay.apply("CurrentObject", c.asJson()));
+        delta.clear();
+        assertTrue(replay.apply(WorldLogReplay.WORLD_DELTA, delta.toJson()));
+        assertEquals("[" + a.asJson() + ", " + c.asJson() + "]", replay.getCurrentWorldJson());
+    }
+
+    @Test
+    public void testReplayWithDroppedEvents() {
+        var a = new Block(1, 66, 1);
+        var b = new Block(2, 66, 1);
+        var c = new Block(3, 66, 1);
+        var replay = new WorldLogReplay();
+        List<Runnable> writers = new ArrayList<>();
+        var eventLog = new GameEventLog(
+                (events) -> events.forEach((event) -> replay.apply(event.type(), event.message())),
+                writers::add, 3, GameEventLog.OverflowPolicy.DROP_OLDEST,
+                Set.of(WorldLogReplay.FULL_WORLD, WorldLogReplay.WORLD_DELTA));
+
+        var delta = new WorldDelta();
+        eventLog.log(() -> "[" + a.asJson() + "]", WorldLogReplay.FULL_WORLD);
+        eventLog.log(b::asJson, "CurrentObject");
+        delta.add(b);
+        String first = delta.toJson();
+        eventLog.log(() -> first, WorldLogReplay.WORLD_DELTA);
+        eventLog.log(c::asJson, "CurrentObject");  // drops the first CurrentObject
+        writers.remove(0).run();
+
+        delta.clear();
+        delta.add(c);
+        delta.remove(a);
+        String second = delta.toJson();
+        eventLog.log(() -> second, WorldLogReplay.WORLD_DELTA);
+        eventLog.log(a::asJson, "CurrentObject");
+        eventLog.log(b::asJson, "CurrentObject");
+        eventLog.log(c::asJson, "CurrentObject");  // drops the CurrentObject after the delta
+        writers.remove(0).run();
+
+        assertEquals(2, eventLog.getNumDropped());
+        assertEquals("[" + b.asJson() + ", " + c.asJson() + "]", replay.getCurrentWorldJson());
+    }
+
+    @Test
+    public void testSplitArray() {
+        assertEquals(List.of(), WorldLogReplay.splitArray("[]", 0));
+        assertEquals(List.of("{\"a\":[1,2]}", "\"x,]\"", "3"),
+                WorldLogReplay.splitArray("[{\"a\":[1,2]}, \"x,]\", 3]", 0));
+    }
+}
@@ -0,0 +1,61 @@
+package de.saar.minecraft.simplearchitect.experiments;
+
+import de.saar.minecraft.analysis.WeightEstimator;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NoiseMaxExperimentTest {
+    private static final String BASE_WEIGHTS = "{\"weights\": {\"iwall\": -3.0, \"irow\": -2.0, \"irailing\": -2.5},"
+            + " \"firstOccurenceWeights\": {\"iwall\": -9.0, \"irailing\": -7.0}}";
+
+    @Test
+    public void testRunsDoNotDependOnEarlierRuns() throws Exception {
+        assertSameResultOnTwoThreads(new NoiseMaxExperiment(42, WeightEstimator.WeightResult.fromJson(BASE_WEIGHTS)));
+    }
+
+    @Test
+    public void testRunsWithFeatureModelsDoNotDependOnEarlierRuns() throws Exception {
+        var experiment = new NoiseMaxExperiment(42, WeightEstimator.WeightResult.fromJson(BASE_WEIGHTS));
+        experiment.setFeatureModelTolerance(0.5);
+        assertSameResultOnTwoThreads(experiment);
+    }
+
+    @Test
+    public void testResultsDoNotDependOnNumberOfThreads() {
+        var sequential = new NoiseMaxExperiment(42, WeightEstimator.WeightResult.fromJson(BASE_WEIGHTS));
+        sequential.setNumThreads(1);
+        var parallel = new NoiseMaxExperiment(42, WeightEstimator.WeightResult.fromJson(BASE_WEIGHTS));
+        parallel.setNumThreads(3);
+        var perturbSizes = List.of(2000, 2000000);
+        assertEquals(sequential.runExperiment("bridge", 6, perturbSizes),
+                parallel.runExperiment("bridge", 6, perturbSizes));
+    }
+
+    /**
+     * Performs the same run on a thread that did runs with much larger noise before and on a fresh thread.
+     */
+    private static void assertSameResultOnTwoThreads(NoiseMaxExperiment experiment)
+            throws InterruptedException, ExecutionException {
+        var first = Executors.newSingleThreadExecutor();
+        var second = Executors.newSingleThreadExecutor();
+        try {
+            for (int run = 1; run <= 3; run++) {
+                int otherRun = run;
+                first.submit(() -> experiment.run("bridge", 2000000, otherRun)).get();
+            }
+            var afterOtherRuns = first.submit(() -> experiment.run("bridge", 2000, 0)).get();
+            var fresh = second.submit(() -> experiment.run("bridge", 2000, 0)).get();
+            // the realizer has the same weights, not only the same optimal level
+            assertEquals(fresh.realizerWeights(), afterOtherRuns.realizerWeights());
+            assertEquals(fresh.instructionLevel(), afterOtherRuns.instructionLevel());
+        } finally {
+            first.shutdown();
+            second.shutdown();
+        }
+    }
+}